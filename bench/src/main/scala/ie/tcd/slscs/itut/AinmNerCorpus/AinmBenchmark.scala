@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.ByteArrayInputStream
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+
+import scala.xml.{Elem, XML}
+
+import AinmProcess.NERText
+
+/**
+ * Benchmarks of the reading and conversion hot paths, on synthetic
+ * biographies of the given number of paragraphs.
+ * Run with -prof gc to get the allocation rate as well as the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+class AinmBenchmark {
+  @Param(Array("20", "200"))
+  var paragraphs: Int = _
+
+  var bytes: Array[Byte] = _
+  var xml: Elem = _
+  var paras: List[Paragraph] = _
+  var nerParas: List[List[NERText]] = _
+  var stringParas: List[List[String]] = _
+
+  @Setup
+  def setup() {
+    bytes = SyntheticTEI.document(SyntheticTEI.sampleLines, paragraphs).getBytes("UTF-8")
+    xml = XML.load(new ByteArrayInputStream(bytes))
+    paras = TEIReader.readParagraphs(xml)
+    nerParas = paras.map{e => e.children.map{AinmProcess.ainmTextPieceToNER}}
+    stringParas = nerParas.map{e => e.map{AinmProcess.pieceToString}}
+  }
+
+  @Benchmark
+  def readHeader(): TEIHeader = TEIReader.readHeader(xml)
+
+  @Benchmark
+  def readParagraphs(): List[Paragraph] = TEIReader.readParagraphs(xml)
+
+  @Benchmark
+  def loadAndReadParagraphs(): List[Paragraph] = TEIReader.readParagraphs(XML.load(new ByteArrayInputStream(bytes)))
+
+  @Benchmark
+  def readParagraphsStreaming(): List[Paragraph] = TEIStreamReader.readParagraphs(new ByteArrayInputStream(bytes))
+
+  @Benchmark
+  def simplifyTextPieces(): List[List[NERText]] = nerParas.map{AinmProcess.simplifyTextPieces}
+
+  @Benchmark
+  def getSpans(): List[List[(Int, Int)]] = stringParas.map{AinmProcess.getSpans}
+
+  @Benchmark
+  def filterNERType(): List[List[NERText]] = nerParas.map{e => AinmProcess.filterNERType("person", e)}
+
+  @Benchmark
+  def splitNER(): List[String] = nerParas.map{AinmProcess.splitNER}
+
+  @Benchmark
+  def processParagraphs(): List[String] = AinmProcess.processParagraphs(paras, "")
+}
+// set tabstop=2
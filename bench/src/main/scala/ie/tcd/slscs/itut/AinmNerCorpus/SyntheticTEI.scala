@@ -0,0 +1,92 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.File
+import java.nio.charset.Charset
+import java.nio.file.Files
+
+/**
+ * Builds biography-sized TEI documents for the benchmarks from the sample
+ * outputs in the repository, turning the OpenNLP markup back into the
+ * elements used by ainm.ie.
+ */
+object SyntheticTEI {
+  val samples = List("adam_mickiewicz.txt", "máire_ann_nic_reachtain.txt")
+  private val entity = "<START:(\\w+)> (.*?) <END>".r
+
+  def findSample(name: String): File = {
+    val dirs = sys.props.get("ainm.samples").toList ++ List(".", "..")
+    dirs.map{d => new File(d, name)}.find{_.exists}.getOrElse {
+      throw new Exception("Sample not found: " + name + " (set -Dainm.samples to the repository directory)")
+    }
+  }
+  def readSample(name: String): List[String] = {
+    val text = new String(Files.readAllBytes(findSample(name).toPath), Charset.forName("UTF-8"))
+    text.split("\n").toList.filter{_.trim != ""}
+  }
+  def sampleLines: List[String] = samples.flatMap{readSample}
+
+  def escape(s: String): String = s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+
+  def toParagraph(line: String, n: Int): String = {
+    val sb = new StringBuilder("<p>")
+    var last = 0
+    var i = 0
+    for(m <- entity.findAllMatchIn(line)) {
+      sb.append(escape(line.substring(last, m.start)))
+      val t = escape(m.group(2))
+      m.group(1) match {
+        case "person" => sb.append("<persName id=\"" + (n * 100 + i) + "\" baseform=\"" + t + "\">" + t + "</persName>")
+        case "location" => sb.append("<placeName id=\"" + (n * 100 + i) + "\" baseform=\"" + t + "\" geonames=\"" + (2960000 + i) + "\">" + t + "</placeName>")
+        case _ => sb.append("<party baseform=\"" + t + "\">" + t + "</party>")
+      }
+      last = m.end
+      i += 1
+    }
+    sb.append(escape(line.substring(last)))
+    sb.append("</p>")
+    sb.toString
+  }
+
+  def header(id: Int): String = """<header><fileDesc><titleStmt>""" +
+    """<title>Mickiewicz, Adam (1798&#8211;1855)</title><titleNote>file</titleNote>""" +
+    """<persName><forename>Adam</forename><surname>Mickiewicz</surname></persName>""" +
+    """<birth date="1798-12-24">24 Nollaig 1798</birth><death date="1855-11-26">26 Samhain 1855</death>""" +
+    """<sex>fireann</sex><floruit/><school>Scoil</school><university>Ollscoil Vilnius</university>""" +
+    """<occupation>file</occupation><occupation>m&#250;inteoir</occupation><faith>Caitliceach</faith>""" +
+    """<birthPlace id="1" geonames="2960000" type="foreign">Zaosie</birthPlace><author>&#218;dar</author>""" +
+    """</titleStmt></fileDesc></header>"""
+
+  /**
+   * A document of the given number of paragraphs, cycling through the
+   * lines of the samples
+   */
+  def document(lines: List[String], paragraphs: Int, id: Int = 1): String = {
+    val body = Iterator.continually(lines).flatten.take(paragraphs).zipWithIndex.map{case (l, n) => toParagraph(l, n)}
+    "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<biography id=\"" + id + "\">" + header(id) +
+      "<text>" + body.mkString("\n") + "</text></biography>\n"
+  }
+}
+// set tabstop=2
@@ -1,38 +0,0 @@
-#!/usr/bin/perl
-# The MIT License (MIT)
-#
-# Copyright (c) 2017 Jim O'Regan
-#
-# Permission is hereby granted, free of charge, to any person obtaining a copy
-# of this software and associated documentation files (the "Software"), to deal
-# in the Software without restriction, including without limitation the rights
-# to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
-# copies of the Software, and to permit persons to whom the Software is
-# furnished to do so, subject to the following conditions:
-#
-# The above copyright notice and this permission notice shall be included in
-# all copies or substantial portions of the Software.
-#
-# THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
-# IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
-# FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
-# AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
-# LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
-# OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
-# SOFTWARE.
-
-use warnings;
-use strict;
-use utf8;
-
-binmode(STDIN, ":utf8");
-binmode(STDOUT, ":utf8");
-
-while(<>) {
-    s!<persName ([^>]*)>([^<]*)<hide>([^<]*)</hide></persName>!<persName $1>$2</persName><hide>$3</hide>!g;
-    s!<persName ([^>]*)>([^<]*)<hide>([^<]*)</hide>([^<]*)</persName>!<persName $1>$2$4</persName><hide>$3</hide>!g;
-    s!<persName ([^>]*)>([^<]*)<hide([^>]*)>([^<]*)</hide>([^<]*)</persName>!<persName $1>$2$5</persName><hide$3>$4</hide>!g;
-    s!<persName ([^>]*)>([^<]*)<placeName ([^>]*)>([^<]*)</placeName></persName>!<persName $1>$2$4</persName>!g;
-
-    print;
-}
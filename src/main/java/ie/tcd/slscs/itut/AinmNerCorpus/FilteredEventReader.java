@@ -0,0 +1,53 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus;
+
+import java.util.NoSuchElementException;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.util.EventReaderDelegate;
+
+/**
+ * An EventReaderDelegate the next() of which returns nextEvent(), so that
+ * a subclass that changes the events only has to override nextEvent,
+ * peek and hasNext (and nextTag and getElementText).
+ * next() is defined here, as Scala (2.10) cannot override it: it has
+ * different types in Iterator and EventReaderDelegate.
+ */
+public abstract class FilteredEventReader extends EventReaderDelegate {
+    public FilteredEventReader(XMLEventReader reader) {
+        super(reader);
+    }
+
+    @Override
+    public Object next() {
+        try {
+            return nextEvent();
+        } catch (XMLStreamException e) {
+            NoSuchElementException ex = new NoSuchElementException(e.getMessage());
+            ex.initCause(e);
+            throw ex;
+        }
+    }
+}
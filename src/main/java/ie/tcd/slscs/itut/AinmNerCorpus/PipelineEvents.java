@@ -0,0 +1,142 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder events for the conversion pipeline, recorded with, e.g.,
+ * -XX:StartFlightRecording=filename=convert.jfr
+ * The events are only referred to as Object outside this class, so that
+ * nothing else needs jdk.jfr; where it is not available (before 8u262),
+ * begin() returns null, and the other methods do nothing.
+ */
+public final class PipelineEvents {
+    private static final boolean AVAILABLE = isAvailable();
+
+    private PipelineEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    @Name("ie.tcd.slscs.itut.AinmNerCorpus.Stage")
+    @Label("Pipeline Stage")
+    @Category("AinmNerCorpus")
+    static class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+        @Label("File")
+        String file;
+    }
+
+    @Name("ie.tcd.slscs.itut.AinmNerCorpus.File")
+    @Label("File Converted")
+    @Category("AinmNerCorpus")
+    static class FileEvent extends Event {
+        @Label("File")
+        String file;
+        @Label("Paragraphs")
+        int paragraphs;
+        @Label("Entities")
+        int entities;
+        @Label("Bytes Read")
+        long bytesRead;
+    }
+
+    /**
+     * Starts timing a stage
+     * @return the event, to pass to stage() or file(), or null
+     */
+    public static Object begin() {
+        if(!AVAILABLE) {
+            return null;
+        }
+        StageEvent e = new StageEvent();
+        e.begin();
+        return e;
+    }
+
+    /**
+     * Starts timing the conversion of a file
+     * @return the event, to pass to file(), or null
+     */
+    public static Object beginFile() {
+        if(!AVAILABLE) {
+            return null;
+        }
+        FileEvent e = new FileEvent();
+        e.begin();
+        return e;
+    }
+
+    /**
+     * Ends a stage event, and commits it if it is being recorded
+     * @param event the result of begin()
+     * @param stage the name of the stage
+     * @param file the file being converted
+     */
+    public static void stage(Object event, String stage, String file) {
+        if(AVAILABLE && event instanceof StageEvent) {
+            StageEvent e = (StageEvent) event;
+            e.end();
+            if(e.shouldCommit()) {
+                e.stage = stage;
+                e.file = file;
+                e.commit();
+            }
+        }
+    }
+
+    /**
+     * Ends a file event, and commits it if it is being recorded
+     * @param event the result of beginFile()
+     * @param file the file converted
+     * @param paragraphs the number of paragraphs read
+     * @param entities the number of entities read
+     * @param bytesRead the size of the file
+     */
+    public static void file(Object event, String file, int paragraphs, int entities, long bytesRead) {
+        if(AVAILABLE && event instanceof FileEvent) {
+            FileEvent e = (FileEvent) event;
+            e.end();
+            if(e.shouldCommit()) {
+                e.file = file;
+                e.paragraphs = paragraphs;
+                e.entities = entities;
+                e.bytesRead = bytesRead;
+                e.commit();
+            }
+        }
+    }
+}
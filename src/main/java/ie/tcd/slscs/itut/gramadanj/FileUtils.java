@@ -26,8 +26,16 @@ package ie.tcd.slscs.itut.gramadanj;
  */
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 public class FileUtils {
     /**
@@ -126,4 +134,44 @@ public class FileUtils {
     public static File[] getFileListFGB(String s) {
         return getFileListStartsAndEndsWith(s, "TYPESET", ".xml");
     }
+
+    /**
+     * Lazily find the regular files in a directory whose names match a
+     * predicate, optionally recursing into subdirectories (e.g., of a
+     * wget -x mirror). Nothing is listed until the stream is consumed, and
+     * the listing is never copied; the stream holds open directory handles,
+     * so should be closed (e.g., with try-with-resources).
+     * Parallel streams are split in batches, as the size is not known.
+     * @param d the directory to search
+     * @param recursive whether to search subdirectories
+     * @param name the test to apply to the file name
+     * @return stream of the paths of the matching files
+     */
+    public static Stream<Path> find(String d, boolean recursive, final Predicate<String> name) throws IOException {
+        Path dir = Paths.get(d);
+        Stream<Path> paths = recursive ? Files.walk(dir) : Files.list(dir);
+        return paths.filter(p -> name.test(p.getFileName().toString()) && Files.isRegularFile(p));
+    }
+    /**
+     * Lazily find the files in a directory that begin and end with a pattern
+     * @param d the directory to search
+     * @param s the pattern to check at the start
+     * @param e the pattern to check at the end
+     * @param recursive whether to search subdirectories
+     * @return stream of the paths of the matching files
+     */
+    public static Stream<Path> findStartsAndEndsWith(String d, final String s, final String e, boolean recursive) throws IOException {
+        return find(d, recursive, n -> n.startsWith(s) && n.endsWith(e));
+    }
+    /**
+     * Lazily find the files in a directory whose names match a glob
+     * @param d the directory to search
+     * @param glob the glob (e.g., "Bio*xml=true") to match file names against
+     * @param recursive whether to search subdirectories
+     * @return stream of the paths of the matching files
+     */
+    public static Stream<Path> findGlob(String d, String glob, boolean recursive) throws IOException {
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        return find(d, recursive, n -> matcher.matches(Paths.get(n)));
+    }
 }
@@ -0,0 +1,334 @@
+package ie.tcd.slscs.itut.gramadanj;
+
+/*
+ * Copyright © 2016 Trinity College, Dublin
+ * Irish Speech and Language Technology Research Centre
+ * Cóipcheart © 2016 Coláiste na Tríonóide, Baile Átha Cliath
+ * An tIonad taighde do Theicneolaíocht Urlabhra agus Teangeolaíochta na Gaeilge
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A read-only map of a two-column (UTF-8) .tsv file, as read by
+ * Utils.readTSV, but without reading the file into the heap: the file is
+ * memory-mapped, and indexed by an open-addressing hash table that holds
+ * the offsets of the lines rather than Strings; values are only decoded
+ * when looked up.
+ * The table is kept in an index file (the .tsv file name, plus .idx),
+ * which is rebuilt if it is missing or older than the .tsv file, so that
+ * after the first time, opening a lexicon only maps two files.
+ * As with readTSV, later lines take precedence over earlier ones with the
+ * same key, lines end at \n, \r or \r\n, trailing tabs are dropped
+ * (as String.split drops trailing empty fields), and lines without
+ * exactly two fields are an error.
+ */
+public class MappedLexicon {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] MAGIC = "LEXIDX02".getBytes(UTF8);
+    private static final int HEADER = MAGIC.length + 8 + 8 + 4 + 4;
+
+    private final MappedByteBuffer data;
+    private final LongBuffer slots;
+    private final int mask;
+    private final int size;
+
+    private MappedLexicon(MappedByteBuffer data, LongBuffer slots, int size) {
+        this.data = data;
+        this.slots = slots;
+        this.mask = slots.capacity() - 1;
+        this.size = size;
+    }
+
+    /**
+     * Opens a lexicon, building its index if needed
+     * @param f the .tsv file
+     * @return the lexicon
+     */
+    public static MappedLexicon open(File f) throws IOException {
+        return open(f, indexFile(f));
+    }
+    /**
+     * Opens a lexicon, building its index if needed
+     * @param f the .tsv file
+     * @param idx the index file
+     * @return the lexicon
+     */
+    public static MappedLexicon open(File f, File idx) throws IOException {
+        MappedByteBuffer data = map(f);
+        if(idx.exists()) {
+            MappedByteBuffer index = map(idx);
+            if(isCurrent(index, f)) {
+                int size = index.getInt(HEADER - 4);
+                index.position(HEADER);
+                return new MappedLexicon(data, index.slice().asLongBuffer(), size);
+            }
+        }
+        long[] table = buildTable(data);
+        int size = countEntries(table);
+        writeIndex(idx, f, table, size);
+        return new MappedLexicon(data, LongBuffer.wrap(table), size);
+    }
+
+    public static File indexFile(File f) {
+        return new File(f.getPath() + ".idx");
+    }
+
+    private static MappedByteBuffer map(File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            if(ch.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + f.getPath());
+            }
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static boolean isCurrent(ByteBuffer index, File f) {
+        if(index.capacity() < HEADER) {
+            return false;
+        }
+        for(int i = 0; i < MAGIC.length; i++) {
+            if(index.get(i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        long length = index.getLong(MAGIC.length);
+        long modified = index.getLong(MAGIC.length + 8);
+        int capacity = index.getInt(MAGIC.length + 16);
+        return length == f.length() && modified == f.lastModified()
+            && index.capacity() == HEADER + 8L * capacity;
+    }
+
+    private static void writeIndex(File idx, File f, long[] table, int size) throws IOException {
+        File tmp = new File(idx.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+        try {
+            out.write(MAGIC);
+            out.writeLong(f.length());
+            out.writeLong(f.lastModified());
+            out.writeInt(table.length);
+            out.writeInt(size);
+            for(long l : table) {
+                out.writeLong(l);
+            }
+        } finally {
+            out.close();
+        }
+        if(!tmp.renameTo(idx)) {
+            idx.delete();
+            if(!tmp.renameTo(idx)) {
+                throw new IOException("Failed to write index: " + idx.getPath());
+            }
+        }
+    }
+
+    /**
+     * Hash of a range of bytes: FNV-1a, with the finalisation step of
+     * MurmurHash3, as the low bits are used to index the table
+     */
+    private static int hash(ByteBuffer b, int start, int end) {
+        int h = 0x811c9dc5;
+        for(int i = start; i < end; i++) {
+            h ^= b.get(i) & 0xff;
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+    private static int hash(byte[] b) {
+        return hash(ByteBuffer.wrap(b), 0, b.length);
+    }
+
+    private static int keyEnd(ByteBuffer b, int start) {
+        int i = start;
+        while(b.get(i) != '\t') {
+            i++;
+        }
+        return i;
+    }
+    private static int lineEnd(ByteBuffer b, int start) {
+        int i = start;
+        int limit = b.capacity();
+        while(i < limit && b.get(i) != '\n' && b.get(i) != '\r') {
+            i++;
+        }
+        return i;
+    }
+    private static int nextLine(ByteBuffer b, int end) {
+        if(end + 1 < b.capacity() && b.get(end) == '\r' && b.get(end + 1) == '\n') {
+            return end + 2;
+        }
+        return end + 1;
+    }
+    private static int trimTabs(ByteBuffer b, int start, int end) {
+        while(end > start && b.get(end - 1) == '\t') {
+            end--;
+        }
+        return end;
+    }
+    private static boolean sameKey(ByteBuffer b, int a, int c) {
+        while(b.get(a) == b.get(c)) {
+            if(b.get(a) == '\t') {
+                return true;
+            }
+            a++;
+            c++;
+        }
+        return false;
+    }
+
+    private static long[] buildTable(ByteBuffer b) throws IOException {
+        int limit = b.capacity();
+        int lines = 0;
+        for(int i = 0; i < limit; i = nextLine(b, lineEnd(b, i))) {
+            lines++;
+        }
+        int capacity = 16;
+        while(capacity < lines * 2) {
+            capacity <<= 1;
+        }
+        long[] table = new long[capacity];
+        int mask = capacity - 1;
+        int start = 0;
+        int lineno = 0;
+        while(start < limit) {
+            lineno++;
+            int end = lineEnd(b, start);
+            int valueEnd = trimTabs(b, start, end);
+            int tab = -1;
+            int tabs = 0;
+            for(int i = start; i < valueEnd; i++) {
+                if(b.get(i) == '\t') {
+                    if(tab == -1) {
+                        tab = i;
+                    }
+                    tabs++;
+                }
+            }
+            // the same lines as split("\\t") rejects
+            if(tabs != 1) {
+                throw new IOException("Error reading file at line: " + lineno);
+            }
+            int h = hash(b, start, tab);
+            long entry = ((long) h << 32) | ((start + 1) & 0xffffffffL);
+            int slot = h & mask;
+            while(true) {
+                long cur = table[slot];
+                if(cur == 0) {
+                    table[slot] = entry;
+                    break;
+                } else if((int) (cur >>> 32) == h && sameKey(b, (int) cur - 1, start)) {
+                    table[slot] = entry;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            start = nextLine(b, end);
+        }
+        return table;
+    }
+    private static int countEntries(long[] table) {
+        int n = 0;
+        for(long l : table) {
+            if(l != 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private int find(String key) {
+        byte[] k = key.getBytes(UTF8);
+        int h = hash(k);
+        int slot = h & mask;
+        while(true) {
+            long cur = slots.get(slot);
+            if(cur == 0) {
+                return -1;
+            }
+            if((int) (cur >>> 32) == h) {
+                int start = (int) cur - 1;
+                if(matches(start, k)) {
+                    return start;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    private boolean matches(int start, byte[] k) {
+        if(start + k.length >= data.capacity()) {
+            return false;
+        }
+        for(int i = 0; i < k.length; i++) {
+            if(data.get(start + i) != k[i]) {
+                return false;
+            }
+        }
+        return data.get(start + k.length) == '\t';
+    }
+
+    /**
+     * Looks up a key
+     * @param key the key (first column)
+     * @return the value (second column), or null if the key is not present
+     */
+    public String get(String key) {
+        int start = find(key);
+        if(start == -1) {
+            return null;
+        }
+        int tab = keyEnd(data, start);
+        int end = trimTabs(data, tab, lineEnd(data, tab));
+        byte[] value = new byte[end - tab - 1];
+        for(int i = 0; i < value.length; i++) {
+            value[i] = data.get(tab + 1 + i);
+        }
+        return new String(value, UTF8);
+    }
+
+    public boolean containsKey(String key) {
+        return find(key) != -1;
+    }
+
+    /**
+     * @return the number of distinct keys
+     */
+    public int size() {
+        return size;
+    }
+}
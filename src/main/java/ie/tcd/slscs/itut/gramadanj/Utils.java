@@ -39,8 +39,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 public class Utils {
+    private static final Pattern TAB = Pattern.compile("\\t");
 
     /**
      * As close as I can get to Perl's s///g operator
@@ -172,19 +174,24 @@ public class Utils {
 
     /**
      * Slurp a .tsv file into a map
+     * (for large files, see MappedLexicon, which does not)
      */
     public static Map<String, String> readTSV(File f) throws Exception {
         Map<String, String> ret = new HashMap<String, String>();
-        BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f)));
-        String line;
-        int lineno = 0;
-        while((line = br.readLine()) != null) {
-            lineno++;
-            String[] sp = line.split("\\t");
-            if(sp.length != 2) {
-                throw new IOException("Error reading file at line: " + lineno);
+        BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
+        try {
+            String line;
+            int lineno = 0;
+            while((line = br.readLine()) != null) {
+                lineno++;
+                String[] sp = TAB.split(line);
+                if(sp.length != 2) {
+                    throw new IOException("Error reading file at line: " + lineno);
+                }
+                ret.put(sp[0], sp[1]);
             }
-            ret.put(sp[0], sp[1]);
+        } finally {
+            br.close();
         }
         return ret;
     }
@@ -32,16 +32,68 @@ import opennlp.tools.tokenize.TokenizerME
 import opennlp.tools.tokenize.TokenizerModel
 import opennlp.tools.util.Span
 
+import java.util.concurrent.{ExecutionException, ExecutorService, ForkJoinPool, Future, Callable}
+
 object AinmProcess {
   import scala.xml.XML
   import java.io.File
 
-  val gasentbin: InputStream = getClass.getResourceAsStream("/ie/tcd/slscs/itut/AinmNerCorpus/ga-sent.bin")
-  val gatokbin: InputStream = getClass.getResourceAsStream("/ie/tcd/slscs/itut/AinmNerCorpus/ga-token.bin")
-  val sentmodel = new SentenceModel(gasentbin)
-  val sentdetect = new SentenceDetectorME(sentmodel)
-  val tokmodel = new TokenizerModel(gatokbin)
-  val tokdetect = new TokenizerME(tokmodel)
+  /*
+   * The models are loaded on first use, so that using AinmProcess for,
+   * e.g., getFileList, does not load them.
+   */
+  private def loadModel[M](name: String)(load: InputStream => M): M = {
+    val in = getClass.getResourceAsStream("/ie/tcd/slscs/itut/AinmNerCorpus/" + name)
+    if(in == null) {
+      throw new IOException("Model not found: " + name)
+    }
+    try {
+      load(new BufferedInputStream(in))
+    } finally {
+      in.close()
+    }
+  }
+  lazy val sentmodel: SentenceModel = loadModel("ga-sent.bin"){e => new SentenceModel(e)}
+  lazy val tokmodel: TokenizerModel = loadModel("ga-token.bin"){e => new TokenizerModel(e)}
+
+  /*
+   * SentenceDetectorME and TokenizerME are not thread-safe, so while the
+   * models are shared, each thread gets its own detector and tokeniser.
+   */
+  private val localSentDetect = new ThreadLocal[SentenceDetectorME] {
+    override def initialValue(): SentenceDetectorME = new SentenceDetectorME(sentmodel)
+  }
+  private val localTokDetect = new ThreadLocal[TokenizerME] {
+    override def initialValue(): TokenizerME = new TokenizerME(tokmodel)
+  }
+  def sentdetect: SentenceDetectorME = localSentDetect.get
+  def tokdetect: TokenizerME = localTokDetect.get
+
+  /*
+   * Optional caches in front of the tokeniser and sentence splitter, for
+   * the short pieces of text (mostly names) that recur across the corpus;
+   * the models are deterministic, so the results are the same either way.
+   */
+  @volatile private var tokenCache: Option[FragmentCache[Array[String]]] = None
+  @volatile private var sentenceCache: Option[FragmentCache[Array[String]]] = None
+  def enableFragmentCache(entries: Int) {
+    if(entries > 0) {
+      tokenCache = Some(new FragmentCache[Array[String]]("Token", entries))
+      sentenceCache = Some(new FragmentCache[Array[String]]("Sentence", entries))
+    } else {
+      tokenCache = None
+      sentenceCache = None
+    }
+  }
+  def fragmentCacheSummary: List[String] = (tokenCache.toList ++ sentenceCache.toList).map{_.summary}
+  def tokenize(s: String): Array[String] = tokenCache match {
+    case Some(c) => c.get(s){e => tokdetect.tokenize(e)}
+    case None => tokdetect.tokenize(s)
+  }
+  def sentences(s: String): Array[String] = sentenceCache match {
+    case Some(c) => c.get(s){e => sentdetect.sentDetect(e)}
+    case None => sentdetect.sentDetect(s)
+  }
 
   implicit def spanToTuple(s: Span):(Int, Int) = (s.getStart, s.getEnd)
   implicit def tupleToSpan(t: (Int, Int)): Span = new Span(t._1, t._2)
@@ -54,11 +106,13 @@ object AinmProcess {
    * way.
    */
   def getSpans(s: List[String]):List[(Int, Int)] = {
-    def spaninner(start: Int, l: List[String], acc: List[(Int, Int)]):List[(Int, Int)] = l match {
-      case x :: xs => spaninner(start + x.length + 1, xs, acc :+ (start, start + x.length))
-      case nil => acc
+    val out = List.newBuilder[(Int, Int)]
+    var start = 0
+    s.foreach{x =>
+      out += ((start, start + x.length))
+      start += x.length + 1
     }
-    spaninner(0, s, List[(Int, Int)]())
+    out.result()
   }
 
   /**
@@ -71,6 +125,96 @@ object AinmProcess {
     val files = FileUtils.getFileListStartsAndEndsWith(dir, "Bio", "xml=true")
     files.toList
   }
+  /**
+   * As getFileList, but lazily, and optionally searching subdirectories
+   * (as wget -x leaves them); the directory listing is closed once the
+   * iterator is exhausted.
+   */
+  def findFiles(dir: String, recursive: Boolean): Iterator[File] = {
+    import ie.tcd.slscs.itut.gramadanj.FileUtils
+    import scala.collection.JavaConverters._
+    val stream = FileUtils.findStartsAndEndsWith(dir, "Bio", "xml=true", recursive)
+    val it = stream.iterator.asScala
+    new Iterator[File] {
+      // a closed listing cannot be asked again, so its end is remembered
+      private var closed = false
+      def hasNext: Boolean = {
+        val more = !closed && it.hasNext
+        if(!more && !closed) {
+          stream.close()
+          closed = true
+        }
+        more
+      }
+      def next(): File = it.next().toFile
+    }
+  }
+
+  /**
+   * The ID of the biography, from the file name (Bio.aspx?ID={id}&xml=true),
+   * or the file name itself, if it does not contain one.
+   */
+  def documentId(name: String): String = {
+    val base = name.substring(name.lastIndexOf('/') + 1)
+    val idpat = ".*[?&]ID=([^&]+).*".r
+    base match {
+      case idpat(id) => id
+      case _ => base
+    }
+  }
+  def documentId(f: File): String = documentId(f.getName)
+
+  /**
+   * Parses a comma-separated list of filters; "all" is the same as no
+   * filter ("")
+   */
+  def parseFilters(s: String): List[String] = {
+    val filters = s.split(",").toList.map{e => if(e == "all") "" else e}.distinct
+    filters.foreach{
+      case "person" | "organization" | "location" | "text" =>
+      case "" =>
+      case _ => throw new Exception("Filter can only be person, organization, location, text, or all")
+    }
+    filters
+  }
+  def outputName(filter: String): String = filter match {
+    case "person" => "person-ner.txt"
+    case "organization" => "org-ner.txt"
+    case "location" => "loc-ner.txt"
+    case "text" => "ner-plain.txt"
+    case "" => "all-ner.txt"
+  }
+
+  /**
+   * Keeps the files named in the selection file, by file name or by ID
+   * (one per line)
+   */
+  def selectFiles(files: List[File], selection: File): List[File] = {
+    val selected = selectionFilter(selection)
+    files.filter{f => selected(f.getName)}
+  }
+  def selectionFilter(selection: File): String => Boolean = {
+    val source = scala.io.Source.fromFile(selection, "UTF-8")
+    val names = try {
+      source.getLines.map{_.trim}.filter{_ != ""}.toSet
+    } finally {
+      source.close()
+    }
+    name => names.contains(name) || names.contains(documentId(name))
+  }
+
+  /**
+   * The selected documents, recording the path of every document read
+   * (selected or not) in seen, so that a ConversionCache closed with it
+   * keeps the entries of the documents that were not selected
+   */
+  def selectDocuments(docs: Iterator[CorpusDocument], selected: String => Boolean,
+                      seen: scala.collection.mutable.Set[String]): Iterator[CorpusDocument] = {
+    docs.map{e =>
+      seen += e.path
+      e
+    }.filter{e => selected(e.name)}
+  }
 
   /**
    * Get the paragraphs from a single file
@@ -82,6 +226,28 @@ object AinmProcess {
     TEIReader.readParagraphs(xml)
   }
 
+  /**
+   * Get the paragraphs from a single file, using the StAX reader rather
+   * than loading the whole document
+   */
+  def readFileStreaming(f: File): List[Paragraph] = TEIStreamReader.readFile(f)
+
+  /**
+   * Get the paragraphs from a document, which may be in an archive
+   */
+  def readDocument(d: CorpusDocument, stax: Boolean): List[Paragraph] = {
+    val in = d.open()
+    try {
+      if(stax) {
+        TEIStreamReader.readParagraphs(in)
+      } else {
+        TEIReader.readParagraphs(XML.load(in))
+      }
+    } finally {
+      in.close()
+    }
+  }
+
   abstract class NERText {
     def toText: String
     def beforeText: String = ""
@@ -118,18 +284,63 @@ object AinmProcess {
     case PlaceName(id, bf, t, _, _) => EntityReference(t, "location")
     case EduInst(id, t, eduname) => EntityReference(t, "location")
   }
+  /**
+   * Merges adjacent pieces of text, in a single pass.
+   */
   def simplifyTextPieces(pieces: List[NERText]): List[NERText] = {
-    def simplifyInner(pieces: List[NERText], acc: List[NERText]): List[NERText] = pieces match {
-      case EntityReference(a, b) :: xs => simplifyInner(xs, acc :+ EntityReference(a,b))
-      case TextPart(t) :: xs => xs match {
-        case Nil => acc :+ TextPart(t)
-        case TextPart(tt) :: xx => simplifyInner(xx :+ TextPart(t + tt), acc)
-        case EntityReference(a, b) :: xx => simplifyInner(xx, acc ++ List(TextPart(t), EntityReference(a, b)))
+    val out = List.newBuilder[NERText]
+    val text = new StringBuilder
+    var intext = false
+    pieces.foreach{
+      case TextPart(t) => {
+        text.append(t)
+        intext = true
+      }
+      case e @ EntityReference(_, _) => {
+        if(intext) {
+          out += TextPart(text.toString)
+          text.setLength(0)
+          intext = false
+        }
+        out += e
       }
-      case Nil => acc
       case _ => throw new Exception("Unexpected object: " + pieces.toString)
     }
-    simplifyInner(pieces, List.empty[NERText])
+    if(intext) {
+      out += TextPart(text.toString)
+    }
+    out.result()
+  }
+  /**
+   * Equivalent to simplifyTextPieces(filterNERParagraph(p, filter)):
+   * maps each piece to NERText, applies the type filter, and merges
+   * adjacent text, in a single pass.
+   */
+  def simplifyParagraph(p: Paragraph, filter: String): List[NERText] = {
+    val kind = if(filter == null) "" else filter
+    val out = List.newBuilder[NERText]
+    val text = new StringBuilder
+    var intext = false
+    p.children.foreach{c =>
+      ainmTextPieceToNER(c) match {
+        case e @ EntityReference(_, k) if(k == kind || kind == "") => {
+          if(intext) {
+            out += TextPart(text.toString)
+            text.setLength(0)
+            intext = false
+          }
+          out += e
+        }
+        case n => {
+          text.append(pieceToString(n))
+          intext = true
+        }
+      }
+    }
+    if(intext) {
+      out += TextPart(text.toString)
+    }
+    out.result()
   }
   def filterNERParagraph(p: Paragraph, filt: String): List[NERText] = {
     if(filt != null && filt != "") {
@@ -141,7 +352,7 @@ object AinmProcess {
   def piecesFromFile(f: File, filter: String): List[List[NERText]] = {
     val xmltext = XML.loadFile(f)
     val rawparas = TEIReader.readParagraphs(xmltext)
-    rawparas.map{e => simplifyTextPieces(filterNERParagraph(e, filter))}
+    rawparas.map{e => simplifyParagraph(e, filter)}
   }
   def piecesFromFilePath(s: String, filter: String): List[List[NERText]] = {
     piecesFromFile(new File(s), filter)
@@ -159,14 +370,14 @@ object AinmProcess {
    */
   def filterNERType(kind: String, l: List[NERText]): List[NERText] = {
     def filterinner(n: NERText, kind: String): NERText = n match {
-      case EntityReference(t, k) => {
+      case e @ EntityReference(t, k) => {
         if(k == kind || kind == "") {
-          EntityReference(t, k)
+          e
         } else {
           TextPart(t)
         }
       }
-      case TextPart(t) => TextPart(t)
+      case e @ TextPart(_) => e
     }
     l.map{e => filterinner(e, kind)}
   }
@@ -176,12 +387,38 @@ object AinmProcess {
   def tokeniseParagraph(p: Paragraph): Array[Span] = tokdetect.tokenizePos(p.getText)
   def tokeniseParagraphs(l: List[Paragraph]): Array[Array[Span]] = l.map{tokeniseParagraph}.toArray
   def splitNERText(in: NERText): String = in match {
-    case TextPart(t) => sentdetect.sentDetect(t).map{e => tokdetect.tokenize(e).mkString(" ")}.mkString("\n")
-    case EntityReference(t, _) => in.beforeText + tokdetect.tokenize(t).mkString(" ") + in.afterText
+    case TextPart(t) => sentences(t).map{e => tokenize(e).mkString(" ")}.mkString("\n")
+    case EntityReference(t, _) => in.beforeText + tokenize(t).mkString(" ") + in.afterText
     case _ => throw new Exception("Unexpected object " + in.toString)
   }
-  def splitNER(in: List[NERText]): String = {
-    in.map{splitNERText}.mkString(" ").replaceAll(" +", " ").replaceAll("\n+", "\n")
+  def splitNER(in: List[NERText]): String = joinSplit(in.map{splitNERText})
+  /**
+   * Joins the split pieces with spaces, collapsing runs of spaces and of
+   * newlines: the same as mkString(" ").replaceAll(" +", " ").replaceAll("\n+", "\n")
+   * but without the intermediate strings.
+   */
+  def joinSplit(l: List[String]): String = {
+    val sb = new StringBuilder
+    var last = '\u0000'
+    def append(c: Char) {
+      if(!(c == last && (c == ' ' || c == '\n'))) {
+        sb.append(c)
+        last = c
+      }
+    }
+    var first = true
+    l.foreach{s =>
+      if(!first) {
+        append(' ')
+      }
+      var i = 0
+      while(i < s.length) {
+        append(s.charAt(i))
+        i += 1
+      }
+      first = false
+    }
+    sb.toString
   }
   def processParagraph(p: Paragraph, filter: String): String = {
     val parts = p.children.map{ainmTextPieceToNER}
@@ -189,38 +426,248 @@ object AinmProcess {
     splitNER(filtered)
   }
   def processParagraphs(l: List[Paragraph], filter: String): List[String] = l.map{e => processParagraph(e, filter)}
+  def processFile(f: File, filter: String, read: File => List[Paragraph]): String = {
+    processParagraphs(read(f), filter).mkString("\n")
+  }
+
+  /**
+   * A piece of a paragraph, tokenised lazily: an entity is tokenised as
+   * text only if some filter has turned it into text.
+   */
+  class SplitPiece(n: NERText) {
+    lazy val asText: String = splitNERText(TextPart(pieceToString(n)))
+    lazy val asEntity: String = splitNERText(n)
+    def forFilter(kind: String): String = n match {
+      case EntityReference(_, k) if(k == kind || kind == "") => asEntity
+      case _ => asText
+    }
+  }
+  /**
+   * Equivalent to filters.map{f => processParagraph(p, f)}, but the
+   * paragraph is only read and tokenised once.
+   */
+  def processParagraphMulti(p: Paragraph, filters: List[String]): List[String] = {
+    val pieces = p.children.map{e => new SplitPiece(ainmTextPieceToNER(e))}
+    filters.map{f => joinSplit(pieces.map{_.forFilter(f)})}
+  }
+  def processFileMulti[A](f: A, filters: List[String], read: A => List[Paragraph]): List[String] = {
+    val paras = read(f).map{e => processParagraphMulti(e, filters)}
+    filters.indices.toList.map{i => paras.map{_(i)}.mkString("\n")}
+  }
+
+  /**
+   * Map over an iterator on a (work-stealing) pool of the given number of
+   * threads, keeping the order of the input, so that the output is the same
+   * as that of it.map(f). At most window items are in flight at once, so
+   * the input is consumed lazily, as the output is.
+   */
+  def orderedMap[A, B](it: Iterator[A], pool: ExecutorService, window: Int)(f: A => B): Iterator[B] = new Iterator[B] {
+    private val pending = new scala.collection.mutable.Queue[Future[B]]
+    private def fill() {
+      while(pending.size < window && it.hasNext) {
+        val a = it.next()
+        pending.enqueue(pool.submit(new Callable[B] {
+          def call(): B = f(a)
+        }))
+      }
+    }
+    def hasNext: Boolean = {
+      fill()
+      !pending.isEmpty
+    }
+    def next(): B = {
+      if(!hasNext) {
+        throw new NoSuchElementException("No more items")
+      }
+      try {
+        pending.dequeue().get()
+      } catch {
+        case e: ExecutionException => throw e.getCause
+      }
+    }
+  }
+  /**
+   * As orderedMap, on a pool of its own, which is shut down once the output
+   * has been read to the end, or when an item (or the input) fails
+   */
+  def orderedMap[A, B](it: Iterator[A], threads: Int)(f: A => B): Iterator[B] = {
+    if(threads > 1) {
+      val pool = new ForkJoinPool(threads)
+      val out = orderedMap(it, pool, threads * 4)(f)
+      new Iterator[B] {
+        private def shutdownOnFailure[C](body: => C): C = try {
+          body
+        } catch {
+          case e: Throwable => {
+            pool.shutdownNow()
+            throw e
+          }
+        }
+        def hasNext: Boolean = {
+          val more = shutdownOnFailure(out.hasNext)
+          if(!more) {
+            pool.shutdown()
+          }
+          more
+        }
+        def next(): B = shutdownOnFailure(out.next())
+      }
+    } else {
+      it.map(f)
+    }
+  }
+
+  /**
+   * Converts the documents in parallel, keeping their order, through the
+   * cache if there is one, and counting them in PipelineMetrics
+   */
+  def convertDocuments(docs: Iterator[CorpusDocument], threads: Int, stax: Boolean, cache: Option[ConversionCache])
+                      (process: (CorpusDocument, List[Paragraph]) => List[String]): Iterator[(CorpusDocument, List[String])] = {
+    def convert(e: CorpusDocument): List[String] =
+      PipelineMetrics.convertFile(e, stax){paras => process(e, paras)}(PipelineMetrics.countOutputTokens)
+    orderedMap(docs, threads){e =>
+      cache match {
+        case Some(c) => {
+          var converted = false
+          val out = c.get(e){d =>
+            converted = true
+            convert(d)
+          }
+          (e, if(converted) out else PipelineMetrics.cachedFile(out)(PipelineMetrics.countOutputTokens))
+        }
+        case None => (e, convert(e))
+      }
+    }
+  }
 }
 
 object OpenNLPConverter extends App {
-  if(args.length < 1 || args.length > 2) {
-    throw new Exception(s"""Usage: OpenNLPConverter directory [filter]
-Where directory is a directory containing the downloaded XML
-and filter is the NER type: person, organization, or location""")
-  }
-  val dir = args(0)
-  val filter = if(args.length == 2) args(1) else ""
-  filter match {
-    case "person" | "organization" | "location" | "text" =>
-    case "" =>
-    case _ => throw new Exception("Filter can only be person, organization, or location")
-  }
-  val outputname = filter match {
-    case "person" => "person-ner.txt"
-    case "organization" => "org-ner.txt"
-    case "location" => "loc-ner.txt"
-    case "text" => "ner-plain.txt"
-    case "" => "all-ner.txt"
+  val usage = s"""Usage: OpenNLPConverter [options] directory [filter[,filter...]]
+Where directory is a directory containing the downloaded XML, or an
+archive of it (.zip, .tar, .tar.gz or .tgz), which is read in one pass
+and filter is the NER type: person, organization, or location
+(or text, for no entities, or all, the default, for all types).
+Several filters can be given, separated by commas, in which case each
+is written to its own file, from a single pass over the directory.
+Options:
+  --stax        read the XML with the streaming (StAX) reader
+  --threads N   convert files in parallel, using N threads
+  --cache DIR   keep the converted text of each file in DIR, and only
+                convert files that are new or have changed since
+  --recursive   also look for files in subdirectories of the directory
+  --project     tokenise each paragraph as a whole, and project the
+                entities onto the tokens
+  --select FILE only convert the files named in FILE (by file name or
+                ID, one per line), e.g., from BiographySelect
+  --dedup exact|near
+                drop sentences that are the same as (or, with near,
+                very similar to) one already written to the same file
+  --dedup-max N keep at most N hashes per file for --dedup (default
+                4194304, about 64MB); after that, sentences are only
+                checked against the ones seen before the limit
+  --token-cache N
+                cache the tokenisation and sentence splitting of up to N
+                short pieces of text (names, mostly)
+  --format FORMAT[,FORMAT...]
+                write the (projected, as with --project) tokens and
+                entities through sinks, in one or more of: opennlp,
+                bio (CoNLL-style columns) or jsonl (a JSON object per
+                sentence); for opennlp, the file names are as without
+                --format, for the others, the extension is the format
+                (cannot be used with --cache or --dedup)
+  --metrics FILE
+                write the counts and the time spent in each stage
+                (parse and extract, or stream with --stax; convert;
+                write; close) to FILE, as JSON (the stages are also recorded as Flight
+                Recorder events, with -XX:StartFlightRecording)"""
+  case class Options(stax: Boolean = false, threads: Int = 1, cache: String = "", project: Boolean = false,
+                     select: String = "", metrics: String = "", tokenCache: Int = 0, recursive: Boolean = false, dedup: String = "", dedupMax: Int = LongSet.defaultMaxSize, format: String = "", positional: List[String] = Nil)
+  def parseOptions(l: List[String], o: Options): Options = l match {
+    case "--stax" :: xs => parseOptions(xs, o.copy(stax = true))
+    case "--threads" :: n :: xs if n.matches("[0-9]+") && n.toInt > 0 => parseOptions(xs, o.copy(threads = n.toInt))
+    case "--cache" :: d :: xs => parseOptions(xs, o.copy(cache = d))
+    case "--project" :: xs => parseOptions(xs, o.copy(project = true))
+    case "--recursive" :: xs => parseOptions(xs, o.copy(recursive = true))
+    case "--dedup" :: d :: xs if d == "exact" || d == "near" => parseOptions(xs, o.copy(dedup = d))
+    case "--dedup-max" :: n :: xs if n.matches("[0-9]+") && n.toInt > 0 && n.toInt <= (1 << 29) => parseOptions(xs, o.copy(dedupMax = n.toInt))
+    case "--select" :: f :: xs => parseOptions(xs, o.copy(select = f))
+    case "--format" :: f :: xs => parseOptions(xs, o.copy(format = f))
+    case "--metrics" :: f :: xs => parseOptions(xs, o.copy(metrics = f))
+    case "--token-cache" :: n :: xs if n.matches("[0-9]+") => parseOptions(xs, o.copy(tokenCache = n.toInt))
+    case x :: xs if x.startsWith("--") => throw new Exception("Unknown option: " + x + "\n" + usage)
+    case x :: xs => parseOptions(xs, o.copy(positional = o.positional :+ x))
+    case Nil => o
+  }
+  val opts = parseOptions(args.toList, Options())
+  if(opts.positional.length < 1 || opts.positional.length > 2) {
+    throw new Exception(usage)
+  }
+  val dir = opts.positional(0)
+  val filters = if(opts.positional.length == 2) AinmProcess.parseFilters(opts.positional(1)) else List("")
+  val formats = if(opts.format != "") CorpusSink.parseFormats(opts.format) else Nil
+  if(!formats.isEmpty && (opts.cache != "" || opts.dedup != "")) {
+    throw new Exception("--format cannot be used with --cache or --dedup")
   }
   val directory = new File(dir)
-  if(dir == null || dir == "" || !directory.exists || !directory.isDirectory) {
-    throw new Exception("Specify the directory containing the ainm corpus")
-  }
-  val files = AinmProcess.getFileList(dir)
-  val docs: List[List[Paragraph]] = files.map{AinmProcess.readFile}
-  val strings = docs.map{e => AinmProcess.processParagraphs(e, filter).mkString("\n")}.mkString("\n").replaceAll("\n+", "\n")
-  val writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputname), Charset.forName("UTF-8")))
-  writer.write(strings)
-  writer.close()
+  if(dir == null || dir == "" || !directory.exists || !(directory.isDirectory || CorpusDocument.isArchive(directory))) {
+    throw new Exception("Specify the directory (or archive) containing the ainm corpus")
+  }
+  val selected: String => Boolean = if(opts.select != "") AinmProcess.selectionFilter(new File(opts.select)) else _ => true
+  // the documents are read on this thread, as orderedMap asks for them
+  val seen = scala.collection.mutable.Set.empty[String]
+  val files = AinmProcess.selectDocuments(CorpusDocument.documents(directory, opts.recursive), selected, seen)
+  AinmProcess.enableFragmentCache(opts.tokenCache)
+  val process: (CorpusDocument, CorpusDocument => List[Paragraph]) => List[String] = if(opts.project) {
+    (e, r) => OffsetProjection.processFileMulti(e, filters, r)
+  } else {
+    (e, r) => AinmProcess.processFileMulti(e, filters, r)
+  }
+  if(formats.isEmpty) {
+    val cache = if(opts.cache != "") Some(new ConversionCache(new File(opts.cache), filters, ConversionCache.mode(opts.stax, opts.project))) else None
+    val docs = AinmProcess.convertDocuments(files, opts.threads, opts.stax, cache){(e, paras) => process(e, _ => paras)}
+    val dedups = filters.map{f => if(opts.dedup != "") Some(new Deduplicator(opts.dedup == "near", maxHashes = opts.dedupMax)) else None}
+    val writers = filters.zip(dedups).map{case (f, d) =>
+      new CorpusWriter(new BufferedWriter(new OutputStreamWriter(PipelineMetrics.countingStream(new FileOutputStream(AinmProcess.outputName(f))), Charset.forName("UTF-8"))), d)
+    }
+    docs.foreach{case (e, d) =>
+      PipelineMetrics.write.time(e.path){writers.zip(d).foreach{case (w, s) => w.writeDocument(s)}}
+      PipelineMetrics.files.increment()
+    }
+    PipelineMetrics.close.time(null){writers.foreach{_.close()}}
+    cache.foreach{c =>
+      c.close(seen.toSet)
+      System.err.println(c.summary)
+    }
+    filters.zip(dedups).foreach{
+      case (f, Some(d)) => System.err.println(AinmProcess.outputName(f) + ": " + d.summary)
+      case _ =>
+    }
+  } else {
+    val docs = AinmProcess.orderedMap(files, opts.threads){e =>
+      // each sentence is written to every sink
+      val sents = PipelineMetrics.convertFile(e, opts.stax)(OffsetProjection.projectParagraphs){l => l.map{_.tokenSpans.length}.sum * formats.length * filters.length}
+      (e, sents)
+    }
+    val sinks = for(fmt <- formats; f <- filters) yield {
+      CorpusSink(fmt, f, PipelineMetrics.countingStream(new FileOutputStream(CorpusSink.fileName(fmt, f))))
+    }
+    docs.foreach{case (e, sents) =>
+      val id = AinmProcess.documentId(e.name)
+      PipelineMetrics.write.time(e.path){sinks.foreach{s =>
+        s.startDocument(id)
+        sents.foreach{s.sentence}
+        s.endDocument()
+      }}
+      PipelineMetrics.files.increment()
+    }
+    PipelineMetrics.close.time(null){sinks.foreach{_.close()}}
+  }
+  AinmProcess.fragmentCacheSummary.foreach{System.err.println}
+  if(opts.metrics != "") {
+    val out = new OutputStreamWriter(new FileOutputStream(opts.metrics), Charset.forName("UTF-8"))
+    out.write(PipelineMetrics.toJSON)
+    out.close()
+  }
   System.exit(0)
 }
 
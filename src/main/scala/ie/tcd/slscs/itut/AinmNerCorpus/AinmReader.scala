@@ -56,50 +56,101 @@ case class TEIHeader(id: String, title: String, titlenote: String,
                      faith: String, schools: List[String], 
                      universities: List[String], occupations: List[String],
                      authors: List[String])
-object TEIReader {
-  def readHeader(bio: Node): TEIHeader = {
-    def fixupdate(txt: String, att: String, ctxt: String): String = {
-      if (att == "" || att == "yyyy-mm-dd") {
-        if(ctxt.trim != "" && txt.trim.startsWith(ctxt.trim)) {
-          txt.trim.substring(ctxt.trim.length)
-        } else {
-          txt
-        }
+/**
+ * Collects the fields of the header from the children of <titleStmt>,
+ * in a single pass, for both TEIReader and TEIStreamReader.
+ * As with NodeSeq.text, the text of repeated elements is concatenated.
+ */
+class HeaderBuilder {
+  val id = new StringBuilder
+  private val fields = scala.collection.mutable.Map.empty[String, StringBuilder]
+  private val lists = scala.collection.mutable.Map.empty[String, List[String]]
+  private def field(k: String): StringBuilder = fields.getOrElseUpdate(k, new StringBuilder)
+  private def get(k: String): String = fields.get(k).map{_.toString}.getOrElse("")
+  private def list(k: String): List[String] = lists.getOrElse(k, Nil).reverse
+
+  /**
+   * Adds a child of <titleStmt>, given its name, its text, and functions
+   * returning the value of an attribute and the text of a child element.
+   */
+  def add(label: String, text: String, attrib: String => String, child: String => String) {
+    label match {
+      case "title" | "titleNote" | "sex" | "floruit" | "faith" => field(label).append(text)
+      case "persName" => {
+        field("forename").append(child("forename"))
+        field("surname").append(child("surname"))
+      }
+      case "birth" | "death" => {
+        field(label).append(text)
+        field(label + "@date").append(attrib("date"))
+        field(label + "/circa").append(child("circa"))
+      }
+      case "school" | "university" | "occupation" | "author" => lists(label) = text :: lists.getOrElse(label, Nil)
+      case "birthPlace" => {
+        field(label).append(text)
+        field(label + "@id").append(attrib("id"))
+        field(label + "@geonames").append(attrib("geonames"))
+        field(label + "@type").append(attrib("type"))
+      }
+      case _ =>
+    }
+  }
+
+  def fixupdate(txt: String, att: String, ctxt: String): String = {
+    if (att == "" || att == "yyyy-mm-dd") {
+      if(ctxt.trim != "" && txt.trim.startsWith(ctxt.trim)) {
+        txt.trim.substring(ctxt.trim.length)
       } else {
-        att
+        txt
       }
+    } else {
+      att
     }
-    val title = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "title").text
-    val id = (bio \\ "biography" \ "@id").text
-    val titlenote = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "titleNote").text
-    val forename = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "persName" \ "forename").text
-    val surname = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "persName" \ "surname").text
-    val bcirca = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "birth" \ "circa").text
-    val dcirca = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "death" \ "circa").text
-    val braw = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "birth").text
-    val draw = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "death").text
-    val batt = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "birth" \ "@date").text
-    val datt = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "death" \ "@date").text
-    val birth = Date(fixupdate(braw, batt, bcirca), bcirca.trim == "c.")
-    val death = Date(fixupdate(draw, datt, dcirca), dcirca.trim == "c.")
-    val sex = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "sex").text
-    val floruit = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "floruit").text
-    val schools = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "school").map{ c => c.text}.toList
-    val universities = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "university").map{ c => c.text}.toList
-    val occupations = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "occupation").map{ c => c.text}.toList
-    val faith = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "faith").text
-    val bplaceid = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "birthPlace" \ "@id").text
-    val bplacegeonames = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "birthPlace" \ "@geonames").text
-    val bplaceforeign = if ((bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "birthPlace" \ "@type").text == "foreign") true else false
-    val bplacetxt = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "birthPlace").text
-    val birthplace = PlaceName(bplaceid, "", bplacetxt, bplacegeonames, bplaceforeign)
-    val authors = (bio \\ "biography" \ "header" \ "fileDesc" \ "titleStmt" \ "author").map{ c => c.text}.toList
-    TEIHeader(id, title, titlenote, forename, surname, birth, death, sex, floruit,
-              birthplace, faith, schools, universities, occupations, authors)
+  }
+  def date(k: String): Date = Date(fixupdate(get(k), get(k + "@date"), get(k + "/circa")), get(k + "/circa").trim == "c.")
+
+  def result: TEIHeader = {
+    val birthplace = PlaceName(get("birthPlace@id"), "", get("birthPlace"), get("birthPlace@geonames"), get("birthPlace@type") == "foreign")
+    TEIHeader(id.toString, get("title"), get("titleNote"), get("forename"), get("surname"),
+              date("birth"), date("death"), get("sex"), get("floruit"), birthplace,
+              get("faith"), list("school"), list("university"), list("occupation"), list("author"))
+  }
+}
+
+object TEIReader {
+  def readHeader(bio: Node): TEIHeader = {
+    val biographies = bio \\ "biography"
+    val header = new HeaderBuilder
+    header.id.append((biographies \ "@id").text)
+    for(ts <- biographies \ "header" \ "fileDesc" \ "titleStmt"; c <- ts.child) {
+      val children = c.child.groupBy{_.label}.map{case (k, v) => (k, v.map{_.text}.mkString(""))}
+      header.add(c.label, c.text, {k => attr(c.attributes, k)}, {k => children.getOrElse(k, "")})
+    }
+    header.result
+  }
+  /**
+   * The value of an attribute, or an empty string if it is absent.
+   * (MetaData.get returns an Option, the toString of which is not the value)
+   */
+  def attr(attribs: MetaData, key: String): String = attribs.get(key) match {
+    case Some(v) => v.text
+    case None => ""
   }
   def readParagraphs(n: Node): List[Paragraph] = (n \\ "p").toList.map{readParagraph}
+  /**
+   * Repairs elements embedded in <persName>: <hide> is moved to after the
+   * <persName>, and <placeName> is replaced by its text (this was done by
+   * scripts/fix-embedded-elements.pl; see also EmbeddedElementRepair).
+   */
+  def repairEmbedded(n: Node): Seq[Node] = n match {
+    case e: Elem if e.label == "persName" && e.child.exists{c => c.label == "hide" || c.label == "placeName"} => {
+      val text = e.child.filter{_.label != "hide"}.map{_.text}.mkString("")
+      e.copy(child = Text(text)) +: e.child.filter{_.label == "hide"}
+    }
+    case _ => Seq(n)
+  }
   def readParagraph(n: Node): Paragraph = n match {
-    case <p>{children @ _* }</p> => Paragraph(children.map{readParagraphPiece}.toList)
+    case <p>{children @ _* }</p> => Paragraph(children.flatMap{repairEmbedded}.map{readParagraphPiece}.toList)
     case _ => throw new Exception("Unexpected element" + n.toString)
   }
   def readParagraphPiece(n: Node): TextPiece = n match {
@@ -107,13 +158,13 @@ object TEIReader {
     case <em>{em}</em> => RawText(em.text)
     case <blockquote>{bq}</blockquote> => RawText(bq.text)
     case <hide>{h}</hide> => RawText("")
-    case a @ Elem(_, "a", attribs, _, _) => Anchor(a.text, attribs.get("href").toString)
-    case e @ Elem(_, "persName", attribs, _, _) => PersonMention(attribs.get("id").toString, attribs.get("baseform").toString, e.text)
-    case e @ Elem(_, "placeName", attribs, _, _) => PlaceName(attribs.get("id").toString, attribs.get("baseform").toString, e.text, attribs.get("geonames").toString, attribs.get("type").toString == "foreign")
-    case e @ Elem(_, "party", attribs, _, _) => Party(attribs.get("baseform").toString, e.text)
-    case e @ Elem(_, "opus", attribs, _, _) => Opus(attribs.get("type").toString, attribs.get("baseform").toString, e.text)
-    case e @ Elem(_, "conradh", attribs, _, _) => Opus(attribs.get("type").toString, attribs.get("baseform").toString, e.text)
-    case e @ Elem(_, "eduInst", attribs, _, _) => EduInst(attribs.get("baseform").toString, e.text, attribs.get("geonames").toString)
+    case a @ Elem(_, "a", attribs, _, _) => Anchor(a.text, attr(attribs, "href"))
+    case e @ Elem(_, "persName", attribs, _, _) => PersonMention(attr(attribs, "id"), attr(attribs, "baseform"), e.text)
+    case e @ Elem(_, "placeName", attribs, _, _) => PlaceName(attr(attribs, "id"), attr(attribs, "baseform"), e.text, attr(attribs, "geonames"), attr(attribs, "type") == "foreign")
+    case e @ Elem(_, "party", attribs, _, _) => Party(attr(attribs, "baseform"), e.text)
+    case e @ Elem(_, "opus", attribs, _, _) => Opus(attr(attribs, "type"), attr(attribs, "baseform"), e.text)
+    case e @ Elem(_, "conradh", attribs, _, _) => Opus(attr(attribs, "type"), attr(attribs, "baseform"), e.text)
+    case e @ Elem(_, "eduInst", attribs, _, _) => EduInst(attr(attribs, "baseform"), e.text, attr(attribs, "geonames"))
     case _ => throw new Exception("Unexpected element" + n.toString)
   }
 }
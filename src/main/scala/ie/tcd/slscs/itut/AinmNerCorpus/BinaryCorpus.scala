@@ -0,0 +1,346 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io._
+import java.nio.ByteBuffer
+import java.nio.charset.Charset
+
+import opennlp.tools.util.Span
+
+import BinaryIO._
+
+/**
+ * A compact binary form of the parsed and tokenised corpus, so that
+ * views of it can be exported without parsing the XML again.
+ *
+ * The file begins with the magic "AINMBIN1", followed by the documents,
+ * then a directory of document IDs and their offsets, and finally the
+ * offset of the directory, as 8 bytes. Numbers are variable-length
+ * (7 bits per byte), offsets within a paragraph are stored as deltas,
+ * and strings are UTF-8, preceded by their length in bytes.
+ *
+ * document:  id, number of paragraphs, paragraphs
+ * paragraph: text, sentences (start delta, length, number of tokens),
+ *            tokens (start delta from the previous end, length),
+ *            entities (kind, start delta, length, id, baseform,
+ *            geonames, subtype, foreign)
+ */
+object BinaryCorpus {
+  val magic = "AINMBIN1"
+
+  val PERSON = 0
+  val PLACE = 1
+  val PARTY = 2
+  val OPUS = 3
+  val CONRADH = 4
+  val EDUINST = 5
+
+  /**
+   * Encodes a document: the paragraphs are tokenised with OffsetProjection.
+   */
+  def encodeDocument(id: String, paras: List[Paragraph]): Array[Byte] = {
+    val out = new ByteArrayOutputStream
+    writeString(out, id)
+    writeVarInt(out, paras.length)
+    paras.foreach{p => encodeParagraph(out, p)}
+    out.toByteArray
+  }
+
+  def encodeParagraph(out: OutputStream, p: Paragraph) {
+    val text = p.getText
+    val sents = OffsetProjection.projectParagraph(p)
+    writeString(out, text)
+    writeVarInt(out, sents.length)
+    var last = 0
+    sents.foreach{s =>
+      writeVarInt(out, s.span.getStart - last)
+      writeVarInt(out, s.span.length)
+      writeVarInt(out, s.tokenSpans.length)
+      last = s.span.getStart
+    }
+    last = 0
+    for(s <- sents; t <- s.tokenSpans) {
+      writeVarInt(out, t.getStart - last)
+      writeVarInt(out, t.length)
+      last = t.getEnd
+    }
+    val entities = new ByteArrayOutputStream
+    var count = 0
+    var offset = 0
+    last = 0
+    p.children.foreach{c =>
+      val rec: Option[(Int, String, String, String, String, Boolean)] = c match {
+        case PersonMention(id, bf, _) => Some((PERSON, id, bf, "", "", false))
+        case PlaceName(id, bf, _, geonames, foreign) => Some((PLACE, id, bf, geonames, "", foreign))
+        case Party(bf, _) => Some((PARTY, "", bf, "", "", false))
+        case Opus(kind, bf, _) => Some((OPUS, "", bf, "", kind, false))
+        case Conradh(kind, bf, _) => Some((CONRADH, "", bf, "", kind, false))
+        case EduInst(bf, _, geonames) => Some((EDUINST, "", bf, geonames, "", false))
+        case _ => None
+      }
+      val len = c.getText.length
+      rec.foreach{case (kind, id, bf, geonames, subtype, foreign) =>
+        entities.write(kind)
+        writeVarInt(entities, offset - last)
+        writeVarInt(entities, len)
+        writeString(entities, id)
+        writeString(entities, bf)
+        writeString(entities, geonames)
+        writeString(entities, subtype)
+        entities.write(if(foreign) 1 else 0)
+        last = offset
+        count += 1
+      }
+      offset += len
+    }
+    writeVarInt(out, count)
+    entities.writeTo(out)
+  }
+
+  /**
+   * The text of a document, per filter, as OffsetProjection.processFileMulti
+   * gives it, from the stored tokenisation.
+   */
+  def exportDocument(d: BinaryDocument, filters: List[String]): List[String] = {
+    val sents = d.paragraphs.flatMap{_.projected}.toList
+    filters.map{flt => sents.map{_.toNameSample(flt).toString.trim}.mkString("\n")}
+  }
+
+  /**
+   * Builds a binary corpus from the documents (see CorpusDocument.documents),
+   * converting them in parallel if threads is more than 1.
+   */
+  def build(docs: Iterator[CorpusDocument], out: File, threads: Int, stax: Boolean) {
+    val writer = new BinaryCorpusWriter(out)
+    try {
+      AinmProcess.orderedMap(docs, threads){d => encodeDocument(AinmProcess.documentId(d.name), AinmProcess.readDocument(d, stax))}.foreach{writer.write}
+    } finally {
+      writer.close()
+    }
+  }
+}
+
+/**
+ * Writes encoded documents, and the directory, to a binary corpus file.
+ */
+class BinaryCorpusWriter(f: File) {
+  private val out = new BufferedOutputStream(new FileOutputStream(f), 1 << 16)
+  private var position = 0L
+  private val directory = new ByteArrayOutputStream
+  private var count = 0
+  out.write(BinaryCorpus.magic.getBytes(utf8))
+  position += BinaryCorpus.magic.length
+
+  /**
+   * Writes a document encoded with BinaryCorpus.encodeDocument
+   */
+  def write(doc: Array[Byte]) {
+    val id = readString(ByteBuffer.wrap(doc))
+    writeString(directory, id)
+    writeVarLong(directory, position)
+    count += 1
+    out.write(doc)
+    position += doc.length
+  }
+
+  def close() {
+    val dirpos = position
+    writeVarInt(out, count)
+    directory.writeTo(out)
+    writeLong(out, dirpos)
+    out.close()
+  }
+}
+
+case class BinaryEntity(kind: Int, start: Int, end: Int, id: String, baseform: String,
+                        geonames: String, subtype: String, foreign: Boolean) {
+  def toTextPiece(text: String): TextPiece = {
+    val t = text.substring(start, end)
+    kind match {
+      case BinaryCorpus.PERSON => PersonMention(id, baseform, t)
+      case BinaryCorpus.PLACE => PlaceName(id, baseform, t, geonames, foreign)
+      case BinaryCorpus.PARTY => Party(baseform, t)
+      case BinaryCorpus.OPUS => Opus(subtype, baseform, t)
+      case BinaryCorpus.CONRADH => Conradh(subtype, baseform, t)
+      case BinaryCorpus.EDUINST => EduInst(baseform, t, geonames)
+      case _ => throw new IOException("Unknown entity kind: " + kind)
+    }
+  }
+}
+
+case class BinaryParagraph(text: String, sentences: Array[Span], sentenceTokens: Array[Int],
+                           tokens: Array[Span], entities: Array[BinaryEntity]) {
+  /**
+   * The paragraph, with the text between entities as RawText (so links
+   * and emphasis are not distinguished)
+   */
+  def toParagraph: Paragraph = {
+    val out = List.newBuilder[TextPiece]
+    var last = 0
+    entities.foreach{e =>
+      if(e.start > last) {
+        out += RawText(text.substring(last, e.start))
+      }
+      out += e.toTextPiece(text)
+      last = e.end
+    }
+    if(last < text.length) {
+      out += RawText(text.substring(last))
+    }
+    Paragraph(out.result())
+  }
+
+  /**
+   * The sentences, as OffsetProjection.projectParagraph would produce them,
+   * using the stored tokenisation.
+   */
+  def projected: List[ProjectedSentence] = {
+    val ner = entities.flatMap{e => OffsetProjection.nerSpan(e.toTextPiece(text), e.start)}
+    OffsetProjection.project(text, sentences, tokens, ner)
+  }
+}
+
+class BinaryDocument(buf: ByteBuffer) {
+  private val in = buf.duplicate
+  val id: String = readString(in)
+  val paragraphCount: Int = readVarInt(in)
+
+  /**
+   * Decodes the paragraphs lazily; each call starts again from the first.
+   */
+  def paragraphs: Iterator[BinaryParagraph] = {
+    val b = in.duplicate
+    Iterator.fill(paragraphCount)(BinaryCorpusReader.readParagraph(b))
+  }
+}
+
+/**
+ * Reads a binary corpus through a memory mapping. Only the directory is
+ * read on opening; documents are decoded as they are requested.
+ */
+class BinaryCorpusReader(f: File) {
+  private val buf = BinaryIO.map(f)
+  checkMagic(buf.duplicate, BinaryCorpus.magic, f)
+  private val dirpos = buf.getLong(buf.limit - 8)
+  private val directory: Array[(String, Long)] = {
+    val in = buf.duplicate
+    in.position(dirpos.toInt)
+    val n = readVarInt(in)
+    Array.fill(n) {
+      val id = readString(in)
+      (id, readVarLong(in))
+    }
+  }
+  private val order: Array[Long] = directory.map{_._2}
+  private lazy val offsets: Map[String, Long] = directory.toMap
+
+  def size: Int = order.length
+  def ids: Iterator[String] = directory.iterator.map{_._1}
+
+  private def documentAt(offset: Long): BinaryDocument = {
+    val b = buf.duplicate
+    b.position(offset.toInt)
+    new BinaryDocument(b.slice)
+  }
+  def documents: Iterator[BinaryDocument] = order.iterator.map{documentAt}
+  def document(id: String): Option[BinaryDocument] = offsets.get(id).map{documentAt}
+}
+
+object BinaryCorpusReader {
+  def readParagraph(in: ByteBuffer): BinaryParagraph = {
+    val text = readString(in)
+    val nsents = readVarInt(in)
+    val sentences = new Array[Span](nsents)
+    val sentenceTokens = new Array[Int](nsents)
+    var last = 0
+    for(i <- 0 until nsents) {
+      val start = last + readVarInt(in)
+      sentences(i) = new Span(start, start + readVarInt(in))
+      sentenceTokens(i) = readVarInt(in)
+      last = start
+    }
+    val tokens = new Array[Span](sentenceTokens.sum)
+    last = 0
+    for(i <- 0 until tokens.length) {
+      val start = last + readVarInt(in)
+      tokens(i) = new Span(start, start + readVarInt(in))
+      last = tokens(i).getEnd
+    }
+    val nents = readVarInt(in)
+    val entities = new Array[BinaryEntity](nents)
+    last = 0
+    for(i <- 0 until nents) {
+      val kind = in.get().toInt
+      val start = last + readVarInt(in)
+      val end = start + readVarInt(in)
+      entities(i) = BinaryEntity(kind, start, end, readString(in), readString(in), readString(in), readString(in), in.get() != 0)
+      last = start
+    }
+    BinaryParagraph(text, sentences, sentenceTokens, tokens, entities)
+  }
+}
+
+/**
+ * Builds a binary corpus from a directory of ainm.ie XML files, or an
+ * archive of them.
+ */
+object BinaryCorpusBuilder extends App {
+  val usage = """Usage: BinaryCorpusBuilder [--stax] [--threads N] [--recursive] directory|archive corpus.bin"""
+  case class Options(stax: Boolean = false, threads: Int = 1, recursive: Boolean = false,
+                     positional: List[String] = Nil)
+  def parseOptions(l: List[String], o: Options): Options = l match {
+    case "--stax" :: xs => parseOptions(xs, o.copy(stax = true))
+    case "--threads" :: n :: xs if n.matches("[0-9]+") && n.toInt > 0 => parseOptions(xs, o.copy(threads = n.toInt))
+    case "--recursive" :: xs => parseOptions(xs, o.copy(recursive = true))
+    case x :: xs if x.startsWith("--") => throw new Exception("Unknown option: " + x + "\n" + usage)
+    case x :: xs => parseOptions(xs, o.copy(positional = o.positional :+ x))
+    case Nil => o
+  }
+  val opts = parseOptions(args.toList, Options())
+  if(opts.positional.length != 2) {
+    throw new Exception(usage)
+  }
+  BinaryCorpus.build(CorpusDocument.documents(new File(opts.positional(0)), opts.recursive), new File(opts.positional(1)), opts.threads, opts.stax)
+  System.exit(0)
+}
+
+/**
+ * Exports filtered views of a binary corpus, in the format written by
+ * OpenNLPConverter --project, without the XML or the OpenNLP models.
+ */
+object BinaryCorpusExport extends App {
+  val usage = """Usage: BinaryCorpusExport corpus.bin [filter[,filter...]]"""
+  if(args.length < 1 || args.length > 2) {
+    throw new Exception(usage)
+  }
+  val corpus = new BinaryCorpusReader(new File(args(0)))
+  val filters = if(args.length == 2) AinmProcess.parseFilters(args(1)) else List("")
+  val writers = filters.map{f => new CorpusWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(AinmProcess.outputName(f)), Charset.forName("UTF-8"))))}
+  corpus.documents.foreach{d =>
+    writers.zip(BinaryCorpus.exportDocument(d, filters)).foreach{case (w, text) => w.writeDocument(text)}
+  }
+  writers.foreach{_.close()}
+}
+// set tabstop=2
@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.{File, IOException, OutputStream, RandomAccessFile}
+import java.nio.{ByteBuffer, MappedByteBuffer}
+import java.nio.channels.FileChannel
+import java.nio.charset.Charset
+
+/**
+ * Variable-length integers and strings, as used by the binary corpus
+ * and index formats, and memory-mapping of the files.
+ */
+object BinaryIO {
+  val utf8 = Charset.forName("UTF-8")
+
+  def writeVarLong(out: OutputStream, v: Long) {
+    if(v < 0) {
+      throw new IllegalArgumentException("Negative value: " + v)
+    }
+    var n = v
+    while(n >= 0x80) {
+      out.write(((n & 0x7f) | 0x80).toInt)
+      n >>>= 7
+    }
+    out.write(n.toInt)
+  }
+  def writeVarInt(out: OutputStream, v: Int) = writeVarLong(out, v)
+  def writeString(out: OutputStream, s: String) {
+    val b = s.getBytes(utf8)
+    writeVarInt(out, b.length)
+    out.write(b)
+  }
+  def writeLong(out: OutputStream, v: Long) {
+    for(i <- 7 to 0 by -1) {
+      out.write((v >>> (i * 8)).toInt & 0xff)
+    }
+  }
+
+  def readVarLong(in: ByteBuffer): Long = {
+    var ret = 0L
+    var shift = 0
+    var b = in.get()
+    while((b & 0x80) != 0) {
+      ret |= (b & 0x7fL) << shift
+      shift += 7
+      b = in.get()
+    }
+    ret | (b.toLong << shift)
+  }
+  def readVarInt(in: ByteBuffer): Int = readVarLong(in).toInt
+  def readString(in: ByteBuffer): String = {
+    val len = readVarInt(in)
+    if(in.hasArray) {
+      val s = new String(in.array, in.arrayOffset + in.position, len, utf8)
+      in.position(in.position + len)
+      s
+    } else {
+      val b = new Array[Byte](len)
+      in.get(b)
+      new String(b, utf8)
+    }
+  }
+  def skipString(in: ByteBuffer) {
+    val len = readVarInt(in)
+    in.position(in.position + len)
+  }
+
+  /**
+   * Maps a file read-only; files are limited to 2GB.
+   */
+  def map(f: File): MappedByteBuffer = {
+    val raf = new RandomAccessFile(f, "r")
+    try {
+      if(raf.length > Int.MaxValue) {
+        throw new IOException("File too large to map: " + f.getPath)
+      }
+      raf.getChannel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length)
+    } finally {
+      raf.close()
+    }
+  }
+
+  def checkMagic(in: ByteBuffer, magic: String, f: File) {
+    val b = new Array[Byte](magic.length)
+    if(in.remaining < b.length) {
+      throw new IOException("Not a " + magic + " file: " + f.getPath)
+    }
+    in.get(b)
+    if(new String(b, utf8) != magic) {
+      throw new IOException("Not a " + magic + " file: " + f.getPath)
+    }
+  }
+}
+// set tabstop=2
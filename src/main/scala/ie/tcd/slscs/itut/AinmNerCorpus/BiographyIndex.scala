@@ -0,0 +1,334 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io._
+import java.nio.ByteBuffer
+
+import BinaryIO._
+
+/**
+ * A columnar index of the biography headers, for selecting documents by
+ * their metadata.
+ *
+ * The file begins with the magic "AINMIDX1", the number of rows, and a
+ * table of the columns (name, type, offset), followed by the columns.
+ * Text columns are dictionary-encoded: the distinct values, then a code
+ * per row. List columns have a count per row, then the codes. Year
+ * columns hold the year plus one, so that 0 is unknown.
+ */
+object BiographyIndex {
+  val magic = "AINMIDX1"
+  val TEXT = 0
+  val LIST = 1
+  val YEAR = 2
+
+  val textColumns: List[(String, TEIHeader => String)] = List(
+    ("id", _.id),
+    ("title", _.title),
+    ("titlenote", _.titlenote),
+    ("forename", _.forename),
+    ("surname", _.surname),
+    ("birth", _.birth.date),
+    ("birthcirca", {h => if(h.birth.circa) "c." else ""}),
+    ("death", _.death.date),
+    ("deathcirca", {h => if(h.death.circa) "c." else ""}),
+    ("sex", _.sex),
+    ("floruit", _.floruit),
+    ("faith", _.faith),
+    ("birthplace", _.birthplace.text),
+    ("birthplaceid", _.birthplace.id),
+    ("birthplacegeonames", _.birthplace.geonames),
+    ("birthplaceforeign", {h => if(h.birthplace.foreign) "foreign" else ""})
+  )
+  val listColumns: List[(String, TEIHeader => List[String])] = List(
+    ("schools", _.schools),
+    ("universities", _.universities),
+    ("occupations", _.occupations),
+    ("authors", _.authors)
+  )
+  val yearColumns: List[(String, TEIHeader => String)] = List(
+    ("birthyear", _.birth.date),
+    ("deathyear", _.death.date)
+  )
+
+  private val yearpat = "(?<![0-9])[0-9]{3,4}(?![0-9])".r
+  /**
+   * The first year in a date, e.g., 1798 in "1798-12-24" or "c. 1798";
+   * a date without one (e.g., "", "yyyy-mm-dd" or "17981224") is unknown,
+   * rather than an error, so that it does not stop the index being built
+   */
+  def year(date: String): Option[Int] = if(date == null) None else yearpat.findFirstIn(date).map{_.toInt}
+
+  private def encodeText(out: OutputStream, values: Seq[String]) {
+    val dict = values.distinct.sorted.toArray
+    val codes = dict.zipWithIndex.toMap
+    writeVarInt(out, dict.length)
+    dict.foreach{e => writeString(out, e)}
+    values.foreach{e => writeVarInt(out, codes(e))}
+  }
+  private def encodeList(out: OutputStream, values: Seq[List[String]]) {
+    val dict = values.flatten.distinct.sorted.toArray
+    val codes = dict.zipWithIndex.toMap
+    writeVarInt(out, dict.length)
+    dict.foreach{e => writeString(out, e)}
+    values.foreach{l =>
+      writeVarInt(out, l.length)
+      l.foreach{e => writeVarInt(out, codes(e))}
+    }
+  }
+
+  /**
+   * Writes the index; the "file" column holds the source file names.
+   */
+  def write(rows: Seq[(String, TEIHeader)], f: File) {
+    val columns = List.newBuilder[(String, Int, Array[Byte])]
+    def column(name: String, kind: Int)(enc: OutputStream => Unit) {
+      val b = new ByteArrayOutputStream
+      enc(b)
+      columns += ((name, kind, b.toByteArray))
+    }
+    column("file", TEXT){out => encodeText(out, rows.map{_._1})}
+    textColumns.foreach{case (name, get) => column(name, TEXT){out => encodeText(out, rows.map{e => get(e._2)})}}
+    listColumns.foreach{case (name, get) => column(name, LIST){out => encodeList(out, rows.map{e => get(e._2)})}}
+    yearColumns.foreach{case (name, get) => column(name, YEAR){out =>
+      rows.foreach{e => writeVarInt(out, year(get(e._2)).map{_ + 1}.getOrElse(0))}
+    }}
+    val cols = columns.result()
+    val table = new ByteArrayOutputStream
+    cols.foreach{case (name, kind, _) =>
+      writeString(table, name)
+      table.write(kind)
+    }
+    val out = new BufferedOutputStream(new FileOutputStream(f))
+    try {
+      out.write(magic.getBytes(utf8))
+      writeVarInt(out, rows.length)
+      writeVarInt(out, cols.length)
+      table.writeTo(out)
+      cols.foreach{case (_, _, b) => writeVarInt(out, b.length)}
+      cols.foreach{case (_, _, b) => out.write(b)}
+    } finally {
+      out.close()
+    }
+  }
+
+  def readHeader(d: CorpusDocument): TEIHeader = {
+    val in = d.open()
+    try {
+      TEIStreamReader.readHeader(in)
+    } finally {
+      in.close()
+    }
+  }
+
+  /**
+   * Reads the headers of the documents (in parallel, keeping their order)
+   * and writes the index; returns the number of documents.
+   */
+  def build(docs: Iterator[CorpusDocument], out: File, threads: Int): Int = {
+    val rows = AinmProcess.orderedMap(docs, threads){d => (d.name, readHeader(d))}.toList
+    write(rows, out)
+    rows.length
+  }
+
+  val conditionUsage = """Conditions:
+  --born-before Y, --born-after Y, --died-before Y, --died-after Y
+  --birthplace TEXT   birthplace contains TEXT (ignoring case)
+  --geonames ID       birthplace has the geonames ID
+  --sex S, --faith F  exact match
+  --occupation TEXT   an occupation contains TEXT (ignoring case)
+  --ids               print the IDs, rather than the file names"""
+
+  /**
+   * Parses the conditions of BiographySelect, returning them and the
+   * column to print (file or id)
+   */
+  def conditions(index: BiographyIndex, args: List[String]): (List[Int => Boolean], String) = {
+    def contains(s: String): String => Boolean = {v => v.toLowerCase.contains(s.toLowerCase)}
+    // the year is checked when the condition is parsed, not when it is used
+    def yearIs(column: String, y: String)(p: (Int, Int) => Boolean): Int => Boolean = {
+      if(!y.matches("[0-9]{1,4}")) {
+        throw new IllegalArgumentException("Not a year: " + y + "\n" + conditionUsage)
+      }
+      val n = y.toInt
+      index.yearMatches(column){v => p(v, n)}
+    }
+    def parse(l: List[String], acc: List[Int => Boolean], col: String): (List[Int => Boolean], String) = l match {
+      case "--born-before" :: y :: xs => parse(xs, yearIs("birthyear", y){_ < _} :: acc, col)
+      case "--born-after" :: y :: xs => parse(xs, yearIs("birthyear", y){_ > _} :: acc, col)
+      case "--died-before" :: y :: xs => parse(xs, yearIs("deathyear", y){_ < _} :: acc, col)
+      case "--died-after" :: y :: xs => parse(xs, yearIs("deathyear", y){_ > _} :: acc, col)
+      case "--birthplace" :: t :: xs => parse(xs, index.textMatches("birthplace")(contains(t)) :: acc, col)
+      case "--geonames" :: t :: xs => parse(xs, index.textMatches("birthplacegeonames"){_ == t} :: acc, col)
+      case "--sex" :: t :: xs => parse(xs, index.textMatches("sex"){_ == t} :: acc, col)
+      case "--faith" :: t :: xs => parse(xs, index.textMatches("faith"){_ == t} :: acc, col)
+      case "--occupation" :: t :: xs => parse(xs, index.listMatches("occupations")(contains(t)) :: acc, col)
+      case "--ids" :: xs => parse(xs, acc, "id")
+      case Nil => (acc, col)
+      case x :: _ => throw new IllegalArgumentException("Unknown condition: " + x + "\n" + conditionUsage)
+    }
+    parse(args, Nil, "file")
+  }
+}
+
+/**
+ * Reads a biography index. Columns are decoded when first used.
+ */
+class BiographyIndex(f: File) {
+  import BiographyIndex._
+
+  private val buf = BinaryIO.map(f)
+  private val (rows, columns) = {
+    val in = buf.duplicate
+    checkMagic(in, magic, f)
+    val nrows = readVarInt(in)
+    val ncols = readVarInt(in)
+    val table = (0 until ncols).map{i => (readString(in), in.get().toInt)}
+    val lengths = (0 until ncols).map{i => readVarInt(in)}
+    val offsets = lengths.scanLeft(in.position){_ + _}
+    (nrows, table.zip(offsets).map{case ((name, kind), off) => (name, (kind, off))}.toMap)
+  }
+
+  def size: Int = rows
+  def columnNames: Iterable[String] = columns.keys
+
+  private def columnBuffer(name: String, kind: Int): ByteBuffer = columns.get(name) match {
+    case Some((k, off)) if k == kind => {
+      val in = buf.duplicate
+      in.position(off)
+      in
+    }
+    case _ => throw new IllegalArgumentException("No such column: " + name)
+  }
+
+  private val textCache = scala.collection.mutable.Map.empty[String, (Array[String], Array[Int])]
+  private val listCache = scala.collection.mutable.Map.empty[String, (Array[String], Array[Int], Array[Int])]
+  private val yearCache = scala.collection.mutable.Map.empty[String, Array[Int]]
+
+  private def textColumn(name: String): (Array[String], Array[Int]) = synchronized {
+    textCache.getOrElseUpdate(name, {
+      val in = columnBuffer(name, TEXT)
+      val dict = Array.fill(readVarInt(in))(readString(in))
+      (dict, Array.fill(rows)(readVarInt(in)))
+    })
+  }
+  private def listColumn(name: String): (Array[String], Array[Int], Array[Int]) = synchronized {
+    listCache.getOrElseUpdate(name, {
+      val in = columnBuffer(name, LIST)
+      val dict = Array.fill(readVarInt(in))(readString(in))
+      val starts = new Array[Int](rows + 1)
+      val codes = Array.newBuilder[Int]
+      for(i <- 0 until rows) {
+        val n = readVarInt(in)
+        starts(i + 1) = starts(i) + n
+        for(j <- 0 until n) {
+          codes += readVarInt(in)
+        }
+      }
+      (dict, starts, codes.result())
+    })
+  }
+  private def yearColumn(name: String): Array[Int] = synchronized {
+    yearCache.getOrElseUpdate(name, {
+      val in = columnBuffer(name, YEAR)
+      Array.fill(rows)(readVarInt(in) - 1)
+    })
+  }
+
+  /**
+   * The value of a text column for a row
+   */
+  def text(name: String, row: Int): String = {
+    val (dict, codes) = textColumn(name)
+    dict(codes(row))
+  }
+  def list(name: String, row: Int): List[String] = {
+    val (dict, starts, codes) = listColumn(name)
+    (starts(row) until starts(row + 1)).toList.map{i => dict(codes(i))}
+  }
+  /**
+   * The year of a year column for a row, or -1 if unknown
+   */
+  def year(name: String, row: Int): Int = yearColumn(name)(row)
+
+  /**
+   * The rows whose text column satisfies p; p is only called once for each
+   * distinct value.
+   */
+  def textMatches(name: String)(p: String => Boolean): Int => Boolean = {
+    val (dict, codes) = textColumn(name)
+    val ok = dict.map{p}
+    row => ok(codes(row))
+  }
+  def listMatches(name: String)(p: String => Boolean): Int => Boolean = {
+    val (dict, starts, codes) = listColumn(name)
+    val ok = dict.map{p}
+    row => (starts(row) until starts(row + 1)).exists{i => ok(codes(i))}
+  }
+  def yearMatches(name: String)(p: Int => Boolean): Int => Boolean = {
+    val years = yearColumn(name)
+    row => years(row) != -1 && p(years(row))
+  }
+
+  def select(p: Int => Boolean): IndexedSeq[Int] = (0 until rows).filter{p}
+}
+
+object BiographyIndexBuilder extends App {
+  val usage = """Usage: BiographyIndexBuilder [--threads N] [--recursive] directory|archive index.bin"""
+  case class Options(threads: Int = 1, recursive: Boolean = false, positional: List[String] = Nil)
+  def parseOptions(l: List[String], o: Options): Options = l match {
+    case "--threads" :: n :: xs if n.matches("[0-9]+") && n.toInt > 0 => parseOptions(xs, o.copy(threads = n.toInt))
+    case "--recursive" :: xs => parseOptions(xs, o.copy(recursive = true))
+    case x :: xs if x.startsWith("--") => throw new Exception("Unknown option: " + x + "\n" + usage)
+    case x :: xs => parseOptions(xs, o.copy(positional = o.positional :+ x))
+    case Nil => o
+  }
+  val opts = parseOptions(args.toList, Options())
+  if(opts.positional.length != 2) {
+    throw new Exception(usage)
+  }
+  val source = new File(opts.positional(0))
+  if(!source.isDirectory && !CorpusDocument.isArchive(source)) {
+    throw new Exception(usage)
+  }
+  val n = BiographyIndex.build(CorpusDocument.documents(source, opts.recursive), new File(opts.positional(1)), opts.threads)
+  System.err.println("Indexed " + n + " biographies")
+  System.exit(0)
+}
+
+/**
+ * Prints the file names of the biographies matching all of the given
+ * conditions, one per line, e.g., for OpenNLPConverter --select.
+ */
+object BiographySelect extends App {
+  val usage = "Usage: BiographySelect index.bin [conditions]\n" + BiographyIndex.conditionUsage
+  if(args.length < 1) {
+    throw new Exception(usage)
+  }
+  val index = new BiographyIndex(new File(args(0)))
+  val (conditions, column) = BiographyIndex.conditions(index, args.toList.tail)
+  index.select{row => conditions.forall{c => c(row)}}.foreach{row => println(index.text(column, row))}
+}
+// set tabstop=2
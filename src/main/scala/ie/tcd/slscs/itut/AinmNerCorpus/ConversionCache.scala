@@ -0,0 +1,206 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io._
+import java.nio.charset.Charset
+import java.nio.file.{Files, StandardCopyOption}
+import java.security.MessageDigest
+
+/**
+ * A cache of converted documents, keyed on the content of the source file,
+ * so that only new or changed files need to be converted again.
+ *
+ * The cache directory contains a manifest, with a line per source file
+ * (path, size, modification time, and SHA-1 of the content), and a
+ * fragment per content hash, mode and filter, holding the converted text.
+ * The mode names the options that the conversion depends on (see
+ * ConversionCache.mode), so that text converted with other options, or
+ * by an older version, is not used, but converted again.
+ * Fragments are written before their manifest line is appended, and the
+ * manifest is flushed after each line, so an interrupted run can be
+ * resumed without converting the finished files again.
+ */
+class ConversionCache(dir: File, filters: List[String], mode: String) {
+  case class Entry(size: Long, modified: Long, hash: String)
+
+  private val utf8 = Charset.forName("UTF-8")
+  private val manifestFile = new File(dir, "manifest.tsv")
+  if(!dir.exists && !dir.mkdirs) {
+    throw new IOException("Failed to create cache directory: " + dir.getPath)
+  }
+  private val entries: scala.collection.mutable.Map[String, Entry] = readManifest()
+  private val manifest = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(manifestFile, true), utf8))
+  private var hits = 0
+  private var misses = 0
+
+  /**
+   * Reads the manifest; later lines take precedence, and lines that are
+   * malformed (e.g., cut short by an interrupted run) are skipped.
+   */
+  private def readManifest(): scala.collection.mutable.Map[String, Entry] = {
+    val ret = scala.collection.mutable.Map.empty[String, Entry]
+    if(manifestFile.exists) {
+      val br = new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile), utf8))
+      try {
+        var line = br.readLine()
+        while(line != null) {
+          line.split("\t") match {
+            case Array(path, size, modified, hash) if size.matches("[0-9]+") && modified.matches("[0-9]+") && hash.length == 40 =>
+              ret(path) = Entry(size.toLong, modified.toLong, hash)
+            case _ =>
+          }
+          line = br.readLine()
+        }
+      } finally {
+        br.close()
+      }
+    }
+    ret
+  }
+
+  private def filterName(filter: String): String = if(filter == "") "all" else filter
+  private def fragmentFile(hash: String, filter: String): File = new File(dir, hash + "." + mode + "." + filterName(filter) + ".txt")
+  private def hasFragments(hash: String): Boolean = filters.forall{f => fragmentFile(hash, f).exists}
+
+  def hashFile(f: CorpusDocument): String = {
+    val md = MessageDigest.getInstance("SHA-1")
+    val in = f.open()
+    try {
+      val buf = new Array[Byte](65536)
+      var n = in.read(buf)
+      while(n != -1) {
+        md.update(buf, 0, n)
+        n = in.read(buf)
+      }
+    } finally {
+      in.close()
+    }
+    md.digest.map{b => "%02x".format(b & 0xff)}.mkString
+  }
+
+  private def readFragment(hash: String, filter: String): String = {
+    new String(Files.readAllBytes(fragmentFile(hash, filter).toPath), utf8)
+  }
+  /**
+   * Writes a fragment to a temporary file of its own, which is then moved
+   * into place, so that documents with the same content, converted at the
+   * same time, do not write to the same file.
+   */
+  private def writeFragment(hash: String, filter: String, text: String) {
+    val target = fragmentFile(hash, filter)
+    val tmp = Files.createTempFile(dir.toPath, target.getName + ".", ".tmp")
+    try {
+      Files.write(tmp, text.getBytes(utf8))
+      Files.move(tmp, target.toPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    } finally {
+      Files.deleteIfExists(tmp)
+    }
+  }
+
+  /**
+   * The converted text of a file, per filter, converting it with convert
+   * if the cache does not hold it already.
+   * The file's hash is only computed if its size or modification time
+   * differ from the manifest.
+   */
+  def get(f: CorpusDocument)(convert: CorpusDocument => List[String]): List[String] = {
+    val path = f.path
+    val size = f.size
+    val modified = f.modified
+    val known = synchronized { entries.get(path) }
+    val hash = known match {
+      case Some(Entry(s, m, h)) if s == size && m == modified => h
+      case _ => hashFile(f)
+    }
+    if(hasFragments(hash)) {
+      if(known != Some(Entry(size, modified, hash))) {
+        record(path, Entry(size, modified, hash))
+      }
+      synchronized { hits += 1 }
+      filters.map{e => readFragment(hash, e)}
+    } else {
+      val out = convert(f)
+      filters.zip(out).foreach{case (filter, text) => writeFragment(hash, filter, text)}
+      record(path, Entry(size, modified, hash))
+      synchronized { misses += 1 }
+      out
+    }
+  }
+
+  private def record(path: String, e: Entry) = synchronized {
+    entries(path) = e
+    manifest.write(path + "\t" + e.size + "\t" + e.modified + "\t" + e.hash + "\n")
+    manifest.flush()
+  }
+
+  /**
+   * Rewrites the manifest with only the given paths (of the documents
+   * read in this run), and deletes the fragments that are no longer
+   * referenced, e.g., of deleted files, and temporary files left by an
+   * interrupted run. Fragments of other modes are kept.
+   */
+  def close(paths: Set[String]) = synchronized {
+    manifest.close()
+    val kept = entries.filter{case (k, _) => paths.contains(k)}
+    val tmp = new File(dir, "manifest.tsv.tmp")
+    val out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), utf8))
+    try {
+      kept.toList.sortBy{_._1}.foreach{case (k, e) =>
+        out.write(k + "\t" + e.size + "\t" + e.modified + "\t" + e.hash + "\n")
+      }
+    } finally {
+      out.close()
+    }
+    Files.move(tmp.toPath, manifestFile.toPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    val hashes = kept.values.map{_.hash}.toSet
+    for(f <- dir.listFiles if f.getName.length > 40 && f.getName.charAt(40) == '.') {
+      if(f.getName.endsWith(".tmp") || (f.getName.endsWith(".txt") && !hashes.contains(f.getName.substring(0, 40)))) {
+        f.delete()
+      }
+    }
+  }
+
+  def summary: String = synchronized { "Cache: " + hits + " unchanged, " + misses + " converted" }
+}
+
+object ConversionCache {
+  /**
+   * Changed when the output of the conversion changes, so that the text
+   * converted by older versions is not used.
+   * 2: attribute values are read as such, so newspapers and periodicals
+   * are organisations
+   */
+  val version = 2
+
+  /**
+   * The mode of a conversion: the version, the reader (DOM or StAX), and
+   * whether the text is retokenised or projected (--project), e.g.,
+   * "v2-dom-split".
+   */
+  def mode(stax: Boolean, project: Boolean): String = {
+    "v" + version + "-" + (if(stax) "stax" else "dom") + "-" + (if(project) "project" else "split")
+  }
+}
+// set tabstop=2
@@ -0,0 +1,383 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io._
+import java.net.{InetSocketAddress, URLDecoder}
+import java.nio.charset.Charset
+import java.util.concurrent._
+import java.util.concurrent.atomic.LongAdder
+
+import scala.collection.JavaConverters._
+
+import com.sun.net.httpserver.{HttpExchange, HttpHandler, HttpServer}
+
+/**
+ * Converts TEI documents on demand, with the models loaded once.
+ * Requests go on a bounded queue, which worker threads take from in
+ * batches (of what has queued up while they were busy), converted
+ * together by ConversionService.convertBatch; when the queue is full,
+ * submit() refuses the request, so that the caller can push back.
+ */
+class ConversionService(threads: Int, queueSize: Int, maxBatch: Int, stax: Boolean) {
+  case class Job(tei: Array[Byte], filter: String, format: String, result: CompletableFuture[Array[Byte]])
+
+  private val queue = new ArrayBlockingQueue[Job](queueSize)
+  val accepted = new LongAdder
+  val rejected = new LongAdder
+  val completed = new LongAdder
+  val failed = new LongAdder
+  val batches = new LongAdder
+
+  // load the models (and warm up the detectors) before taking requests
+  AinmProcess.tokenize("Tá sé réidh.")
+  AinmProcess.sentences("Tá sé réidh.")
+
+  private val workers = (1 to threads).map{i =>
+    val t = new Thread(new Runnable {
+      def run() {
+        val batch = new java.util.ArrayList[Job](maxBatch)
+        try {
+          while(true) {
+            batch.add(queue.take())
+            queue.drainTo(batch, maxBatch - 1)
+            batches.increment()
+            runBatch(batch.asScala.toList)
+            batch.clear()
+          }
+        } catch {
+          case e: InterruptedException =>
+        }
+      }
+    }, "conversion-worker-" + i)
+    t.setDaemon(true)
+    t.start()
+    t
+  }
+
+  private def runBatch(jobs: List[Job]) {
+    val results = try {
+      ConversionService.convertBatch(jobs.map{j => (j.tei, j.filter, j.format)}, stax)
+    } catch {
+      case e: Exception => jobs.map{j => Left(e)}
+    }
+    jobs.zip(results).foreach{
+      case (job, Right(out)) => {
+        job.result.complete(out)
+        completed.increment()
+      }
+      case (job, Left(e)) => {
+        job.result.completeExceptionally(e)
+        failed.increment()
+      }
+    }
+  }
+
+  /**
+   * Queues a document for conversion, if there is room
+   */
+  def submit(tei: Array[Byte], filter: String, format: String): Option[CompletableFuture[Array[Byte]]] = {
+    val job = Job(tei, filter, format, new CompletableFuture[Array[Byte]])
+    if(queue.offer(job)) {
+      accepted.increment()
+      Some(job.result)
+    } else {
+      rejected.increment()
+      None
+    }
+  }
+
+  /**
+   * Queues a document for conversion, waiting for room
+   */
+  def submitAndWait(tei: Array[Byte], filter: String, format: String): CompletableFuture[Array[Byte]] = {
+    val job = Job(tei, filter, format, new CompletableFuture[Array[Byte]])
+    queue.put(job)
+    accepted.increment()
+    job.result
+  }
+
+  def status: String = {
+    "queued " + queue.size + "/" + queueSize + ", accepted " + accepted.sum + ", rejected " + rejected.sum +
+      ", completed " + completed.sum + ", failed " + failed.sum + ", batches " + batches.sum
+  }
+
+  def shutdown() {
+    workers.foreach{_.interrupt()}
+  }
+}
+
+object ConversionService {
+  private def read(tei: Array[Byte], stax: Boolean): List[Paragraph] = {
+    val in = new ByteArrayInputStream(tei)
+    if(stax) {
+      TEIStreamReader.readParagraphs(in)
+    } else {
+      TEIReader.readParagraphs(scala.xml.XML.load(in))
+    }
+  }
+
+  private def write(sents: List[ProjectedSentence], filter: String, format: String): Array[Byte] = {
+    val out = new ByteArrayOutputStream
+    val sink = CorpusSink(format, filter, out)
+    sink.startDocument("")
+    sents.foreach{sink.sentence}
+    sink.endDocument()
+    sink.close()
+    out.toByteArray
+  }
+
+  /**
+   * Converts a document, as OpenNLPConverter --format would
+   */
+  def convert(tei: Array[Byte], filter: String, format: String, stax: Boolean): Array[Byte] = {
+    write(OffsetProjection.projectParagraphs(read(tei, stax)), filter, format)
+  }
+
+  /**
+   * Converts a batch of documents (TEI, filter and format), with the same
+   * output as convert for each: the documents are read, then the
+   * paragraphs of all of them are projected in a single pass, and split
+   * back into documents to be written.
+   * A document that cannot be read or written fails on its own; if the
+   * projection fails, each document is converted on its own, so that the
+   * failure is only given to the documents it comes from.
+   * @return for each document, its output or the exception
+   */
+  def convertBatch(docs: List[(Array[Byte], String, String)], stax: Boolean): List[Either[Exception, Array[Byte]]] = {
+    def attempt[A](body: => A): Either[Exception, A] = try {
+      Right(body)
+    } catch {
+      case e: Exception => Left(e)
+    }
+    val paras = docs.map{case (tei, _, _) => attempt(read(tei, stax))}
+    attempt(paras.flatMap{_.right.getOrElse(Nil)}.map{OffsetProjection.projectParagraph}) match {
+      case Right(projected) => {
+        var rest = projected
+        docs.zip(paras).map{case ((_, filter, format), p) =>
+          p.right.flatMap{l =>
+            val (sents, others) = rest.splitAt(l.length)
+            rest = others
+            attempt(write(sents.flatten, filter, format))
+          }
+        }
+      }
+      case Left(_) => docs.map{case (tei, filter, format) => attempt(convert(tei, filter, format, stax))}
+    }
+  }
+}
+
+object ConversionServer extends App {
+  val usage = """Usage: ConversionServer [options]
+Converts TEI documents on demand, with the models loaded once, either
+over HTTP, on 127.0.0.1:
+  POST /convert?filter=FILTER&format=FORMAT, with the document as the body,
+       returns the converted document (as OpenNLPConverter --format)
+       or 503 if the queue is full
+  GET /status
+or, with --stdin, reading the paths of documents from standard input, a
+line at a time, and writing a JSON object per document to standard
+output, in the same order: {"file":...,"output":...} or
+{"file":...,"error":...}. The filter defaults to all, the format to
+opennlp.
+Options:
+  --port N      the port to listen on (default 8080)
+  --stdin       read from standard input, rather than listening
+  --threads N   convert using N threads (default 1)
+  --queue N     queue at most N documents (default 64)
+  --batch N     take at most N documents from the queue at a time
+                (default 16)
+  --stax        read the XML with the streaming (StAX) reader"""
+  case class Options(port: Int = 8080, stdin: Boolean = false, threads: Int = 1, queue: Int = 64, batch: Int = 16,
+                     stax: Boolean = false)
+  def num(s: String): Boolean = s.matches("[0-9]+") && s.toInt > 0
+  def parseOptions(l: List[String], o: Options): Options = l match {
+    case "--port" :: n :: xs if num(n) => parseOptions(xs, o.copy(port = n.toInt))
+    case "--stdin" :: xs => parseOptions(xs, o.copy(stdin = true))
+    case "--threads" :: n :: xs if num(n) => parseOptions(xs, o.copy(threads = n.toInt))
+    case "--queue" :: n :: xs if num(n) => parseOptions(xs, o.copy(queue = n.toInt))
+    case "--batch" :: n :: xs if num(n) => parseOptions(xs, o.copy(batch = n.toInt))
+    case "--stax" :: xs => parseOptions(xs, o.copy(stax = true))
+    case Nil => o
+    case _ => throw new Exception(usage)
+  }
+  val opts = parseOptions(args.toList, Options())
+  val utf8 = Charset.forName("UTF-8")
+  val service = new ConversionService(opts.threads, opts.queue, opts.batch, opts.stax)
+
+  def readAll(in: InputStream): Array[Byte] = {
+    val out = new ByteArrayOutputStream
+    val buf = new Array[Byte](8192)
+    var n = in.read(buf)
+    while(n != -1) {
+      out.write(buf, 0, n)
+      n = in.read(buf)
+    }
+    out.toByteArray
+  }
+
+  def query(ex: HttpExchange): Map[String, String] = {
+    val q = ex.getRequestURI.getRawQuery
+    if(q == null) {
+      Map.empty
+    } else {
+      q.split("&").toList.map{_.split("=", 2)}.collect{
+        case Array(k, v) => (URLDecoder.decode(k, "UTF-8"), URLDecoder.decode(v, "UTF-8"))
+      }.toMap
+    }
+  }
+
+  def respond(ex: HttpExchange, code: Int, contentType: String, body: Array[Byte]) {
+    ex.getResponseHeaders.set("Content-Type", contentType)
+    ex.sendResponseHeaders(code, body.length)
+    val out = ex.getResponseBody
+    out.write(body)
+    out.close()
+  }
+  def respondText(ex: HttpExchange, code: Int, text: String) {
+    respond(ex, code, "text/plain; charset=UTF-8", (text + "\n").getBytes(utf8))
+  }
+
+  def contentType(format: String): String = format match {
+    case "jsonl" => "application/x-ndjson; charset=UTF-8"
+    case _ => "text/plain; charset=UTF-8"
+  }
+
+  if(opts.stdin) {
+    // results are written in order, by a thread of their own, so that
+    // reading can go on while earlier documents are converted
+    val pending = new ArrayBlockingQueue[Option[(String, CompletableFuture[Array[Byte]])]](opts.queue)
+    val writer = new Thread(new Runnable {
+      def run() {
+        val out = new Utf8Output(new FileOutputStream(FileDescriptor.out))
+        var next = pending.take()
+        while(next.isDefined) {
+          val (file, result) = next.get
+          out.chars("{\"file\":")
+          out.json(file)
+          try {
+            val text = new String(result.get, utf8)
+            out.chars(",\"output\":")
+            out.json(text)
+          } catch {
+            case e: ExecutionException => {
+              out.chars(",\"error\":")
+              out.json(String.valueOf(e.getCause))
+            }
+          }
+          out.chars("}\n")
+          out.flush()
+          next = pending.take()
+        }
+        out.close()
+      }
+    })
+    writer.start()
+    val in = new BufferedReader(new InputStreamReader(System.in, utf8))
+    var line = in.readLine()
+    while(line != null) {
+      val file = line.trim
+      if(file != "") {
+        val result = try {
+          service.submitAndWait(java.nio.file.Files.readAllBytes(new File(file).toPath), "", "opennlp")
+        } catch {
+          case e: IOException => {
+            val f = new CompletableFuture[Array[Byte]]
+            f.completeExceptionally(e)
+            f
+          }
+        }
+        pending.put(Some((file, result)))
+      }
+      line = in.readLine()
+    }
+    pending.put(None)
+    writer.join()
+    service.shutdown()
+    System.exit(0)
+  } else {
+    val server = HttpServer.create(new InetSocketAddress("127.0.0.1", opts.port), 0)
+    // handlers only queue the request: the response is sent when the
+    // conversion is done, so a full queue is always answered with a 503
+    server.createContext("/convert", new HttpHandler {
+      def handle(ex: HttpExchange) {
+        try {
+          if(ex.getRequestMethod != "POST") {
+            respondText(ex, 405, "POST a TEI document")
+            ex.close()
+          } else {
+            val q = query(ex)
+            val filter = AinmProcess.parseFilters(q.getOrElse("filter", "all")) match {
+              case List(f) => f
+              case _ => throw new IllegalArgumentException("Give a single filter")
+            }
+            val format = q.getOrElse("format", "opennlp")
+            CorpusSink.parseFormats(format)
+            val body = readAll(ex.getRequestBody)
+            service.submit(body, filter, format) match {
+              case None => {
+                ex.getResponseHeaders.set("Retry-After", "1")
+                respondText(ex, 503, "Busy: " + service.status)
+                ex.close()
+              }
+              case Some(result) => {
+                result.whenComplete(new java.util.function.BiConsumer[Array[Byte], Throwable] {
+                  def accept(out: Array[Byte], err: Throwable) {
+                    try {
+                      if(err == null) {
+                        respond(ex, 200, contentType(format), out)
+                      } else {
+                        respondText(ex, 400, "Failed to convert: " + err)
+                      }
+                    } finally {
+                      ex.close()
+                    }
+                  }
+                })
+              }
+            }
+          }
+        } catch {
+          case e: Exception => {
+            respondText(ex, 400, String.valueOf(e.getMessage))
+            ex.close()
+          }
+        }
+      }
+    })
+    server.createContext("/status", new HttpHandler {
+      def handle(ex: HttpExchange) {
+        try {
+          respondText(ex, 200, service.status)
+        } finally {
+          ex.close()
+        }
+      }
+    })
+    server.setExecutor(Executors.newFixedThreadPool(2))
+    server.start()
+    System.err.println("Listening on 127.0.0.1:" + opts.port)
+  }
+}
+// set tabstop=2
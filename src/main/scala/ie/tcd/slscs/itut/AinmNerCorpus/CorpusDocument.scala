@@ -0,0 +1,268 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io._
+import java.util.zip.{GZIPInputStream, ZipInputStream}
+
+/**
+ * A document of the corpus: either a file in the (extracted) mirror, or
+ * an entry in an archive of it.
+ */
+abstract class CorpusDocument {
+  /** The file name, e.g., Bio.aspx?ID=1&xml=true */
+  def name: String
+  /** A path that is unique to the document, e.g., for ConversionCache */
+  def path: String
+  def size: Long
+  def modified: Long
+  def open(): InputStream
+}
+
+class FileDocument(val file: File) extends CorpusDocument {
+  def name: String = file.getName
+  def path: String = file.getAbsolutePath
+  def size: Long = file.length
+  def modified: Long = file.lastModified
+  def open(): InputStream = new BufferedInputStream(new FileInputStream(file))
+}
+
+/**
+ * An entry in an archive, which is read in full as the archive is read,
+ * so that the archive is only read once, in order.
+ */
+class ArchiveDocument(archive: File, entry: String, val modified: Long, bytes: Array[Byte]) extends CorpusDocument {
+  def name: String = entry.substring(entry.lastIndexOf('/') + 1)
+  def path: String = archive.getAbsolutePath + "!/" + entry
+  def size: Long = bytes.length
+  def open(): InputStream = new ByteArrayInputStream(bytes)
+}
+
+object CorpusDocument {
+  /**
+   * The same test as AinmProcess.getFileList: Bio*xml=true
+   */
+  def isBiography(name: String): Boolean = {
+    val base = name.substring(name.lastIndexOf('/') + 1)
+    base.startsWith("Bio") && base.endsWith("xml=true")
+  }
+
+  def isArchive(f: File): Boolean = {
+    val n = f.getName.toLowerCase
+    f.isFile && List(".zip", ".tar", ".tar.gz", ".tgz").exists{n.endsWith}
+  }
+
+  /**
+   * The biographies in a directory (as AinmProcess.findFiles, optionally
+   * including subdirectories) or in a zip, tar, or gzipped tar archive (at
+   * any depth, as wget -x would leave them); the directory or archive is
+   * read lazily, and closed when the last document has been read.
+   */
+  def documents(f: File, recursive: Boolean = false): Iterator[CorpusDocument] = {
+    if(f.isDirectory) {
+      AinmProcess.findFiles(f.getPath, recursive).map{e => new FileDocument(e)}
+    } else {
+      val n = f.getName.toLowerCase
+      if(n.endsWith(".zip")) {
+        zipEntries(f)
+      } else if(n.endsWith(".tar")) {
+        tarEntries(f, new BufferedInputStream(new FileInputStream(f), 1 << 16))
+      } else if(n.endsWith(".tar.gz") || n.endsWith(".tgz")) {
+        tarEntries(f, new BufferedInputStream(new GZIPInputStream(new FileInputStream(f), 1 << 16), 1 << 16))
+      } else {
+        throw new IOException("Not a directory or an archive (.zip, .tar, .tar.gz, .tgz): " + f.getPath)
+      }
+    }
+  }
+
+  private def readFully(in: InputStream, size: Long): Array[Byte] = {
+    if(size >= 0) {
+      val buf = new Array[Byte](size.toInt)
+      new DataInputStream(in).readFully(buf)
+      buf
+    } else {
+      val out = new ByteArrayOutputStream
+      val buf = new Array[Byte](8192)
+      var n = in.read(buf)
+      while(n != -1) {
+        out.write(buf, 0, n)
+        n = in.read(buf)
+      }
+      out.toByteArray
+    }
+  }
+
+  /**
+   * An iterator over the entries that fetch() finds, until it returns None,
+   * when in is closed.
+   */
+  private def entries(in: InputStream)(fetch: => Option[CorpusDocument]): Iterator[CorpusDocument] = new Iterator[CorpusDocument] {
+    private var nextDoc: Option[CorpusDocument] = null
+    def hasNext: Boolean = {
+      if(nextDoc == null) {
+        nextDoc = try {
+          fetch
+        } catch {
+          case e: Throwable => {
+            in.close()
+            throw e
+          }
+        }
+        if(nextDoc.isEmpty) {
+          in.close()
+        }
+      }
+      nextDoc.isDefined
+    }
+    def next(): CorpusDocument = {
+      if(!hasNext) {
+        throw new NoSuchElementException("No more entries")
+      }
+      val d = nextDoc.get
+      nextDoc = null
+      d
+    }
+  }
+
+  def zipEntries(f: File): Iterator[CorpusDocument] = {
+    val in = new ZipInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16))
+    entries(in) {
+      var found: Option[CorpusDocument] = None
+      var e = in.getNextEntry
+      while(found.isEmpty && e != null) {
+        if(!e.isDirectory && isBiography(e.getName)) {
+          found = Some(new ArchiveDocument(f, e.getName, e.getTime, readFully(in, e.getSize)))
+        } else {
+          e = in.getNextEntry
+        }
+      }
+      found
+    }
+  }
+
+  private def field(header: Array[Byte], off: Int, len: Int): String = {
+    var end = off
+    while(end < off + len && header(end) != 0) end += 1
+    new String(header, off, end - off, "UTF-8")
+  }
+  private def octal(header: Array[Byte], off: Int, len: Int): Long = {
+    val s = field(header, off, len).trim
+    if(s == "") 0L else java.lang.Long.parseLong(s, 8)
+  }
+  private def skipFully(in: InputStream, n: Long) {
+    var left = n
+    while(left > 0) {
+      val skipped = in.skip(left)
+      if(skipped <= 0) {
+        if(in.read() == -1) {
+          throw new EOFException("Truncated tar archive")
+        }
+        left -= 1
+      } else {
+        left -= skipped
+      }
+    }
+  }
+  private def padding(size: Long): Long = (512 - size % 512) % 512
+
+  /**
+   * The path in a pax extended header: a sequence of "length key=value\n"
+   * records, where the length (in bytes) includes itself and the newline,
+   * so that a value can hold any character
+   */
+  private def paxPath(data: Array[Byte]): Option[String] = {
+    var path: Option[String] = None
+    var pos = 0
+    while(pos < data.length && data(pos) != 0) {
+      val space = data.indexOf(' '.toByte, pos)
+      val digits = if(space > pos) new String(data, pos, space - pos, "US-ASCII") else ""
+      if(!digits.matches("[0-9]{1,9}") || pos + digits.toInt > data.length || pos + digits.toInt < space + 2) {
+        throw new IOException("Bad pax header")
+      }
+      val end = pos + digits.toInt
+      val record = new String(data, space + 1, end - 1 - (space + 1), "UTF-8")
+      if(record.startsWith("path=")) {
+        path = Some(record.substring(5))
+      }
+      pos = end
+    }
+    path
+  }
+
+  /**
+   * Reads a (ustar or GNU) tar archive; long names, in GNU ('L') or pax
+   * ('x') headers, are supported, other extensions are skipped. Contiguous
+   * files ('7') are read as regular files, as GNU tar does.
+   */
+  def tarEntries(f: File, in: InputStream): Iterator[CorpusDocument] = {
+    val header = new Array[Byte](512)
+    val din = new DataInputStream(in)
+    entries(in) {
+      var found: Option[CorpusDocument] = None
+      var longName: String = null
+      var done = false
+      while(found.isEmpty && !done) {
+        val n = din.read(header)
+        if(n > 0 && n < 512) {
+          din.readFully(header, n, 512 - n)
+        }
+        if(n == -1 || header.forall{_ == 0}) {
+          // end of archive; a missing end block is tolerated
+          done = true
+        } else {
+          val size = octal(header, 124, 12)
+          val kind = header(156).toChar
+          val name = if(longName != null) {
+            longName
+          } else if(field(header, 257, 5) == "ustar" && header(345) != 0) {
+            field(header, 345, 155) + "/" + field(header, 0, 100)
+          } else {
+            field(header, 0, 100)
+          }
+          kind match {
+            case 'L' => {
+              longName = new String(readFully(din, size), "UTF-8").takeWhile{_ != '\u0000'}
+              skipFully(din, padding(size))
+            }
+            case 'x' => {
+              paxPath(readFully(din, size)).foreach{p => longName = p}
+              skipFully(din, padding(size))
+            }
+            case '0' | '7' | '\u0000' if isBiography(name) => {
+              found = Some(new ArchiveDocument(f, name, octal(header, 136, 12) * 1000, readFully(din, size)))
+              skipFully(din, padding(size))
+              longName = null
+            }
+            case _ => {
+              skipFully(din, size + padding(size))
+              longName = null
+            }
+          }
+        }
+      }
+      found
+    }
+  }
+}
+// set tabstop=2
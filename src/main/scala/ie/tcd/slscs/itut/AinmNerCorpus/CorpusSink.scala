@@ -0,0 +1,328 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.{File, FileOutputStream, OutputStream}
+
+import opennlp.tools.util.Span
+
+/**
+ * A buffered UTF-8 writer, which encodes characters straight from the
+ * strings (or ranges of them) it is given into its buffer.
+ */
+class Utf8Output(out: OutputStream, size: Int = 1 << 16) {
+  private val buf = new Array[Byte](size)
+  private var pos = 0
+
+  private def room(n: Int) {
+    if(pos + n > buf.length) {
+      flushBuffer()
+    }
+  }
+  private def flushBuffer() {
+    out.write(buf, 0, pos)
+    pos = 0
+  }
+
+  def byte(b: Int) {
+    room(1)
+    buf(pos) = b.toByte
+    pos += 1
+  }
+
+  def chars(s: String, start: Int, end: Int) {
+    var i = start
+    while(i < end) {
+      val c = s.charAt(i)
+      room(4)
+      if(c < 0x80) {
+        buf(pos) = c.toByte
+        pos += 1
+      } else if(c < 0x800) {
+        buf(pos) = (0xc0 | (c >> 6)).toByte
+        buf(pos + 1) = (0x80 | (c & 0x3f)).toByte
+        pos += 2
+      } else if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+        val cp = Character.toCodePoint(c, s.charAt(i + 1))
+        buf(pos) = (0xf0 | (cp >> 18)).toByte
+        buf(pos + 1) = (0x80 | ((cp >> 12) & 0x3f)).toByte
+        buf(pos + 2) = (0x80 | ((cp >> 6) & 0x3f)).toByte
+        buf(pos + 3) = (0x80 | (cp & 0x3f)).toByte
+        pos += 4
+        i += 1
+      } else if(Character.isSurrogate(c)) {
+        // unpaired, as String.getBytes would
+        buf(pos) = '?'.toByte
+        pos += 1
+      } else {
+        buf(pos) = (0xe0 | (c >> 12)).toByte
+        buf(pos + 1) = (0x80 | ((c >> 6) & 0x3f)).toByte
+        buf(pos + 2) = (0x80 | (c & 0x3f)).toByte
+        pos += 3
+      }
+      i += 1
+    }
+  }
+  def chars(s: String) {
+    chars(s, 0, s.length)
+  }
+
+  def int(n: Int) {
+    if(n < 0) {
+      byte('-')
+      int(-n)
+    } else {
+      if(n >= 10) {
+        int(n / 10)
+      }
+      byte('0' + n % 10)
+    }
+  }
+
+  /**
+   * Writes the range of the string as a quoted JSON string
+   */
+  def json(s: String, start: Int, end: Int) {
+    byte('"')
+    var from = start
+    var i = start
+    while(i < end) {
+      val c = s.charAt(i)
+      if(c == '"' || c == '\\' || c < 0x20) {
+        chars(s, from, i)
+        c match {
+          case '"' => chars("\\\"")
+          case '\\' => chars("\\\\")
+          case '\n' => chars("\\n")
+          case '\r' => chars("\\r")
+          case '\t' => chars("\\t")
+          case _ => chars("\\u%04x".format(c.toInt))
+        }
+        from = i + 1
+      }
+      i += 1
+    }
+    chars(s, from, end)
+    byte('"')
+  }
+  def json(s: String) {
+    json(s, 0, s.length)
+  }
+
+  def flush() {
+    flushBuffer()
+    out.flush()
+  }
+  def close() {
+    flushBuffer()
+    out.close()
+  }
+}
+
+/**
+ * A destination for the converted corpus, which is given the tokens and
+ * names of each sentence (as from OffsetProjection), rather than text,
+ * so that each format can be written directly.
+ * The names are those of the given type (or all, if it is "").
+ */
+abstract class CorpusSink(out: Utf8Output, filter: String) {
+  def startDocument(id: String) {}
+  def sentence(s: ProjectedSentence)
+  def endDocument() {}
+  def close() {
+    out.close()
+  }
+
+  protected def names(s: ProjectedSentence): Array[Span] = s.namesFor(filter)
+  protected def token(s: ProjectedSentence, i: Int) {
+    val t = s.tokenSpans(i)
+    out.chars(s.text, t.getStart, t.getEnd)
+  }
+}
+
+/**
+ * The OpenNLP name finder format: the same as NameSample.toString,
+ * trimmed, with sentences separated by newlines, so that the output is
+ * the same as that of OpenNLPConverter --project.
+ * NameSample.toString only drops the space after the last token if there
+ * is more than one token, so a sentence that is a single token in a name
+ * has two spaces before its <END>; this is kept, as is the order of the
+ * <START:type> and <END> between tokens (that of the names, for each).
+ */
+class OpenNLPSink(out: Utf8Output, filter: String) extends CorpusSink(out, filter) {
+  private var first = true
+  def sentence(s: ProjectedSentence) {
+    if(!first) {
+      out.byte('\n')
+    }
+    first = false
+    val n = names(s)
+    val length = s.tokenSpans.length
+    var i = 0
+    while(i < length) {
+      if(i > 0) {
+        out.byte(' ')
+      }
+      n.foreach{e =>
+        if(e.getStart == i) {
+          out.chars("<START:")
+          out.chars(e.getType)
+          out.chars("> ")
+        }
+        if(e.getEnd == i) out.chars("<END> ")
+      }
+      token(s, i)
+      i += 1
+    }
+    n.foreach{e =>
+      if(e.getEnd == length) {
+        if(length == 1) out.byte(' ')
+        out.chars(" <END>")
+      }
+    }
+  }
+}
+
+/**
+ * CoNLL-style columns: a token and its BIO tag (B-type, I-type, or O),
+ * separated by a tab, one per line, with a blank line after each
+ * sentence, and a -DOCSTART- line at the start of each document.
+ */
+class BIOSink(out: Utf8Output, filter: String) extends CorpusSink(out, filter) {
+  override def startDocument(id: String) {
+    out.chars("-DOCSTART-\tO\n\n")
+  }
+  def sentence(s: ProjectedSentence) {
+    val n = names(s)
+    var i = 0
+    while(i < s.tokenSpans.length) {
+      token(s, i)
+      out.byte('\t')
+      n.find{e => e.getStart <= i && i < e.getEnd} match {
+        case Some(e) => {
+          out.chars(if(e.getStart == i) "B-" else "I-")
+          out.chars(e.getType)
+        }
+        case None => out.byte('O')
+      }
+      out.byte('\n')
+      i += 1
+    }
+    out.byte('\n')
+  }
+}
+
+/**
+ * A JSON object per sentence: the document ID, the text of the sentence,
+ * its tokens, and its entities (type, text, and token range), with
+ * [start, end) character offsets into the text, in code points.
+ */
+class JSONLSink(out: Utf8Output, filter: String) extends CorpusSink(out, filter) {
+  private var id = ""
+  override def startDocument(id: String) {
+    this.id = id
+  }
+  def sentence(s: ProjectedSentence) {
+    val base = s.span.getStart
+    var simple = true
+    var c = base
+    while(c < s.span.getEnd) {
+      if(Character.isSurrogate(s.text.charAt(c))) simple = false
+      c += 1
+    }
+    def offset(o: Int): Int = if(simple) o - base else s.text.codePointCount(base, o)
+    out.chars("{\"doc\":")
+    out.json(id)
+    out.chars(",\"text\":")
+    out.json(s.text, s.span.getStart, s.span.getEnd)
+    out.chars(",\"tokens\":[")
+    var i = 0
+    while(i < s.tokenSpans.length) {
+      val t = s.tokenSpans(i)
+      if(i > 0) out.byte(',')
+      out.byte('[')
+      out.int(offset(t.getStart))
+      out.byte(',')
+      out.int(offset(t.getEnd))
+      out.byte(']')
+      i += 1
+    }
+    out.chars("],\"entities\":[")
+    names(s).zipWithIndex.foreach{case (e, j) =>
+      val start = s.tokenSpans(e.getStart).getStart
+      val end = s.tokenSpans(e.getEnd - 1).getEnd
+      if(j > 0) out.byte(',')
+      out.chars("{\"type\":")
+      out.json(e.getType)
+      out.chars(",\"start\":")
+      out.int(offset(start))
+      out.chars(",\"end\":")
+      out.int(offset(end))
+      out.chars(",\"tokenStart\":")
+      out.int(e.getStart)
+      out.chars(",\"tokenEnd\":")
+      out.int(e.getEnd)
+      out.chars(",\"text\":")
+      out.json(s.text, start, end)
+      out.byte('}')
+    }
+    out.chars("]}\n")
+  }
+}
+
+object CorpusSink {
+  val formats = List("opennlp", "bio", "jsonl")
+
+  def parseFormats(s: String): List[String] = {
+    val l = s.split(",").toList.distinct
+    l.foreach{f =>
+      if(!formats.contains(f)) {
+        throw new Exception("Format can only be opennlp, bio, or jsonl")
+      }
+    }
+    l
+  }
+
+  /**
+   * The output file: as AinmProcess.outputName for opennlp, with the
+   * extension changed for the others
+   */
+  def fileName(format: String, filter: String): String = {
+    val name = AinmProcess.outputName(filter)
+    format match {
+      case "opennlp" => name
+      case _ => name.substring(0, name.lastIndexOf('.')) + "." + format
+    }
+  }
+
+  def apply(format: String, filter: String, out: OutputStream): CorpusSink = {
+    val o = new Utf8Output(out)
+    format match {
+      case "opennlp" => new OpenNLPSink(o, filter)
+      case "bio" => new BIOSink(o, filter)
+      case "jsonl" => new JSONLSink(o, filter)
+    }
+  }
+}
+// set tabstop=2
@@ -0,0 +1,343 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.File
+import java.util.Locale
+import java.util.concurrent.ConcurrentLinkedQueue
+
+import AinmProcess.{EntityReference, ainmTextPieceToNER}
+
+/**
+ * An approximate count of distinct items, in 2^p bytes, with a standard
+ * error of about 1.04 / sqrt(2^p) (0.8% for the default p = 14); the
+ * items are given as 64-bit hashes.
+ */
+class HyperLogLog(p: Int = 14) {
+  private val m = 1 << p
+  private val registers = new Array[Byte](m)
+
+  def add(hash: Long) {
+    val idx = (hash >>> (64 - p)).toInt
+    val rho = math.min(java.lang.Long.numberOfLeadingZeros(hash << p), 64 - p) + 1
+    if(rho > registers(idx)) {
+      registers(idx) = rho.toByte
+    }
+  }
+  def add(s: String) {
+    add(Deduplicator.hash(s))
+  }
+
+  def merge(o: HyperLogLog) {
+    var i = 0
+    while(i < m) {
+      if(o.registers(i) > registers(i)) registers(i) = o.registers(i)
+      i += 1
+    }
+  }
+
+  def estimate: Long = {
+    var sum = 0.0
+    var zeros = 0
+    registers.foreach{r =>
+      sum += math.pow(2, -r)
+      if(r == 0) zeros += 1
+    }
+    val alpha = 0.7213 / (1 + 1.079 / m)
+    val e = alpha * m.toDouble * m / sum
+    if(e <= 2.5 * m && zeros > 0) {
+      math.round(m * math.log(m.toDouble / zeros))
+    } else {
+      math.round(e)
+    }
+  }
+}
+
+/**
+ * Counts of lengths from 1 to max, with longer lengths counted as max.
+ */
+class Histogram(val max: Int) {
+  val counts = new Array[Long](max + 1)
+  def add(n: Int) {
+    counts(math.max(0, math.min(n, max))) += 1
+  }
+  def merge(o: Histogram) {
+    for(i <- 0 to max) counts(i) += o.counts(i)
+  }
+  def total: Long = counts.sum
+  def mean: Double = {
+    val t = total
+    if(t == 0) 0.0 else (0 to max).map{i => i * counts(i)}.sum.toDouble / t
+  }
+}
+
+/**
+ * Count, mean and variance, mergeable (Chan et al.)
+ */
+class Moments {
+  var n = 0L
+  var mean = 0.0
+  var m2 = 0.0
+  def add(x: Double) {
+    n += 1
+    val d = x - mean
+    mean += d / n
+    m2 += d * (x - mean)
+  }
+  def merge(o: Moments) {
+    if(o.n > 0) {
+      val total = n + o.n
+      val d = o.mean - mean
+      mean += d * o.n / total
+      m2 += o.m2 + d * d * n * o.n / total
+      n = total
+    }
+  }
+  def stddev: Double = if(n > 1) math.sqrt(m2 / (n - 1)) else 0.0
+  def z(x: Double): Double = if(stddev > 0) (x - mean) / stddev else 0.0
+}
+
+/**
+ * The k items with the highest values.
+ */
+class TopK(k: Int) {
+  private val heap = new java.util.PriorityQueue[(Double, String)](k + 1, new java.util.Comparator[(Double, String)] {
+    def compare(a: (Double, String), b: (Double, String)): Int = java.lang.Double.compare(a._1, b._1)
+  })
+  def add(value: Double, id: String) {
+    heap.add((value, id))
+    if(heap.size > k) heap.poll()
+  }
+  def merge(o: TopK) {
+    val it = o.heap.iterator
+    while(it.hasNext) {
+      val (v, id) = it.next()
+      add(v, id)
+    }
+  }
+  def items: List[(Double, String)] = {
+    val l = List.newBuilder[(Double, String)]
+    val it = heap.iterator
+    while(it.hasNext) l += it.next()
+    l.result().sortBy{-_._1}
+  }
+}
+
+/**
+ * Statistics of (part of) the corpus; each thread keeps its own, and they
+ * are merged at the end. The memory used does not depend on the size of
+ * the corpus: distinct counts are approximate, and only the top k
+ * documents are kept for each kind of outlier.
+ */
+class CorpusStats(k: Int) {
+  import CorpusStats._
+
+  var documents = 0L
+  var paragraphs = 0L
+  var sentences = 0L
+  var tokens = 0L
+  val entities = new Array[Long](types.length)
+  val kinds = scala.collection.mutable.HashMap.empty[String, Long]
+  val entityLengths = Array.fill(types.length)(new Histogram(10))
+  val tokenTypes = new HyperLogLog
+  val surfaceForms = Array.fill(types.length)(new HyperLogLog(12))
+  val entityIds = new HyperLogLog(12)
+  val docTokens = new Moments
+  val docDensity = new Moments
+  val longest = new TopK(k)
+  val shortest = new TopK(k)
+  val densest = new TopK(k)
+  val sparsest = new TopK(k)
+
+  def add(id: String, paras: List[Paragraph]) {
+    documents += 1
+    paragraphs += paras.length
+    var docTokenCount = 0L
+    var docEntities = 0L
+    paras.foreach{p =>
+      p.children.foreach{c =>
+        kinds(kind(c)) = kinds.getOrElse(kind(c), 0L) + 1
+        c match {
+          case PersonMention(i, _, _) if i != "" => entityIds.add("person:" + i)
+          case PlaceName(i, _, _, _, _) if i != "" => entityIds.add("place:" + i)
+          case _ =>
+        }
+        ainmTextPieceToNER(c) match {
+          case EntityReference(t, kind) => {
+            val ti = types.indexOf(kind)
+            entities(ti) += 1
+            surfaceForms(ti).add(t.trim)
+            docEntities += 1
+          }
+          case _ =>
+        }
+      }
+      OffsetProjection.projectParagraph(p).foreach{s =>
+        sentences += 1
+        tokens += s.tokenSpans.length
+        docTokenCount += s.tokenSpans.length
+        s.tokens.foreach{tokenTypes.add}
+        s.names.foreach{n => entityLengths(types.indexOf(n.getType)).add(n.getEnd - n.getStart)}
+      }
+    }
+    val density = if(docTokenCount > 0) 100.0 * docEntities / docTokenCount else 0.0
+    docTokens.add(docTokenCount)
+    docDensity.add(density)
+    longest.add(docTokenCount, id)
+    shortest.add(-docTokenCount, id)
+    densest.add(density, id)
+    sparsest.add(-density, id)
+  }
+
+  def merge(o: CorpusStats) {
+    documents += o.documents
+    paragraphs += o.paragraphs
+    sentences += o.sentences
+    tokens += o.tokens
+    for(i <- types.indices) {
+      entities(i) += o.entities(i)
+      entityLengths(i).merge(o.entityLengths(i))
+      surfaceForms(i).merge(o.surfaceForms(i))
+    }
+    o.kinds.foreach{case (k, v) => kinds(k) = kinds.getOrElse(k, 0L) + v}
+    tokenTypes.merge(o.tokenTypes)
+    entityIds.merge(o.entityIds)
+    docTokens.merge(o.docTokens)
+    docDensity.merge(o.docDensity)
+    longest.merge(o.longest)
+    shortest.merge(o.shortest)
+    densest.merge(o.densest)
+    sparsest.merge(o.sparsest)
+  }
+
+  private def f(d: Double): String = "%.2f".formatLocal(Locale.ROOT, d)
+  private def ratio(a: Long, b: Long): String = if(b == 0) "-" else "%.4f".formatLocal(Locale.ROOT, a.toDouble / b)
+
+  def report: String = {
+    val sb = new StringBuilder
+    def line(s: String) {
+      sb.append(s).append('\n')
+    }
+    line("Documents:  " + documents)
+    line("Paragraphs: " + paragraphs)
+    line("Sentences:  " + sentences)
+    line("Tokens:     " + tokens)
+    line("Distinct tokens: ~" + tokenTypes.estimate + " (type/token ratio " + ratio(tokenTypes.estimate, tokens) + ")")
+    line("Distinct entity IDs: ~" + entityIds.estimate)
+    line("")
+    line("Entities by type (mentions, ~distinct forms, forms/mentions, mean length in tokens):")
+    for(i <- types.indices) {
+      line("  " + types(i) + "\t" + entities(i) + "\t~" + surfaceForms(i).estimate + "\t" +
+        ratio(surfaceForms(i).estimate, entities(i)) + "\t" + f(entityLengths(i).mean))
+    }
+    line("")
+    line("Entities by element:")
+    kinds.toList.sortBy{e => (-e._2, e._1)}.foreach{case (k, v) => line("  " + k + "\t" + v)}
+    line("")
+    line("Entity length in tokens (" + (1 to 10).mkString("\t") + "+):")
+    for(i <- types.indices) {
+      line("  " + types(i) + "\t" + (1 to 10).map{entityLengths(i).counts(_)}.mkString("\t"))
+    }
+    line("")
+    line("Tokens per document: mean " + f(docTokens.mean) + ", sd " + f(docTokens.stddev))
+    line("Entities per 100 tokens: mean " + f(docDensity.mean) + ", sd " + f(docDensity.stddev))
+    def outliers(title: String, top: TopK, sign: Double, m: Moments) {
+      line(title + " (value, z-score):")
+      top.items.foreach{case (v, id) => line("  " + id + "\t" + f(sign * v) + "\t" + f(m.z(sign * v)))}
+    }
+    outliers("Longest documents", longest, 1, docTokens)
+    outliers("Shortest documents", shortest, -1, docTokens)
+    outliers("Most entities per 100 tokens", densest, 1, docDensity)
+    outliers("Fewest entities per 100 tokens", sparsest, -1, docDensity)
+    sb.toString
+  }
+}
+
+object CorpusStats {
+  val types = Array("person", "organization", "location")
+
+  /**
+   * The kind of element a piece of text was read from; both readers read
+   * conradh elements as Opus, so they are counted with the opus elements
+   * of the same type
+   */
+  def kind(t: TextPiece): String = t match {
+    case PersonMention(_, _, _) => "PersonMention"
+    case PlaceName(_, _, _, _, true) => "PlaceName (foreign)"
+    case PlaceName(_, _, _, _, _) => "PlaceName"
+    case Party(_, _) => "Party"
+    case EduInst(_, _, _) => "EduInst"
+    case Opus(k, _, _) => "Opus:" + k
+    case Anchor(_, _) => "Anchor"
+    case RawText(_) => "RawText"
+    case _ => t.getClass.getSimpleName
+  }
+
+  /**
+   * Gathers the statistics of the documents in a single pass, with each
+   * thread adding to its own CorpusStats
+   */
+  def gather(docs: Iterator[CorpusDocument], threads: Int, stax: Boolean, k: Int): CorpusStats = {
+    val all = new ConcurrentLinkedQueue[CorpusStats]
+    val local = new ThreadLocal[CorpusStats] {
+      override def initialValue(): CorpusStats = {
+        val s = new CorpusStats(k)
+        all.add(s)
+        s
+      }
+    }
+    AinmProcess.orderedMap(docs, threads){d =>
+      local.get.add(AinmProcess.documentId(d.name), AinmProcess.readDocument(d, stax))
+    }.foreach{_ => }
+    val total = new CorpusStats(k)
+    val it = all.iterator
+    while(it.hasNext) {
+      total.merge(it.next())
+    }
+    total
+  }
+}
+
+object CorpusStatsReport extends App {
+  val usage = """Usage: CorpusStatsReport [--stax] [--threads N] [--recursive] [--top K] directory|archive"""
+  case class Options(stax: Boolean = false, threads: Int = 1, recursive: Boolean = false, top: Int = 5,
+                     positional: List[String] = Nil)
+  def parseOptions(l: List[String], o: Options): Options = l match {
+    case "--stax" :: xs => parseOptions(xs, o.copy(stax = true))
+    case "--threads" :: n :: xs if n.matches("[0-9]+") && n.toInt > 0 => parseOptions(xs, o.copy(threads = n.toInt))
+    case "--recursive" :: xs => parseOptions(xs, o.copy(recursive = true))
+    case "--top" :: n :: xs if n.matches("[0-9]+") && n.toInt > 0 => parseOptions(xs, o.copy(top = n.toInt))
+    case x :: xs if x.startsWith("--") => throw new Exception("Unknown option: " + x + "\n" + usage)
+    case x :: xs => parseOptions(xs, o.copy(positional = o.positional :+ x))
+    case Nil => o
+  }
+  val opts = parseOptions(args.toList, Options())
+  if(opts.positional.length != 1) {
+    throw new Exception(usage)
+  }
+  val stats = CorpusStats.gather(CorpusDocument.documents(new File(opts.positional(0)), opts.recursive), opts.threads, opts.stax, opts.top)
+  print(stats.report)
+  System.exit(0)
+}
+// set tabstop=2
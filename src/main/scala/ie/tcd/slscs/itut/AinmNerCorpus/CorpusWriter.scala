@@ -0,0 +1,115 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.{FilterWriter, Writer}
+
+/**
+ * Collapses runs of newlines as they are written, which is equivalent to
+ * running replaceAll("\n+", "\n") over everything written, without needing
+ * to hold it all in memory.
+ */
+class NewlineCollapsingWriter(out: Writer) extends FilterWriter(out) {
+  private var lastNewline = false
+
+  override def write(c: Int) {
+    if(c == '\n') {
+      if(!lastNewline) {
+        out.write(c)
+      }
+      lastNewline = true
+    } else {
+      out.write(c)
+      lastNewline = false
+    }
+  }
+
+  override def write(cbuf: Array[Char], off: Int, len: Int) {
+    var start = off
+    var i = off
+    val end = off + len
+    while(i < end) {
+      if(cbuf(i) == '\n') {
+        if(lastNewline) {
+          out.write(cbuf, start, i - start)
+          start = i + 1
+        }
+        lastNewline = true
+      } else {
+        lastNewline = false
+      }
+      i += 1
+    }
+    out.write(cbuf, start, end - start)
+  }
+
+  // scans the string in place, rather than copying it to an array
+  override def write(str: String, off: Int, len: Int) {
+    var start = off
+    var i = off
+    val end = off + len
+    while(i < end) {
+      if(str.charAt(i) == '\n') {
+        if(lastNewline) {
+          out.write(str, start, i - start)
+          start = i + 1
+        }
+        lastNewline = true
+      } else {
+        lastNewline = false
+      }
+      i += 1
+    }
+    out.write(str, start, end - start)
+  }
+}
+
+/**
+ * Writes converted documents one at a time, separated by newlines,
+ * optionally removing duplicate sentences.
+ */
+class CorpusWriter(out: Writer, dedup: Option[Deduplicator] = None) {
+  private val writer = new NewlineCollapsingWriter(out)
+  private var first = true
+
+  def writeDocument(doc: String) {
+    val text = dedup match {
+      case Some(d) => d.filter(doc)
+      case None => doc
+    }
+    // a document with nothing left after removing duplicates is skipped
+    if(text != "" || doc == "") {
+      if(!first) {
+        writer.write('\n')
+      }
+      writer.write(text)
+      first = false
+    }
+  }
+
+  def close() {
+    writer.close()
+  }
+}
+// set tabstop=2
@@ -0,0 +1,244 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+/**
+ * A set of longs, with open addressing and linear probing, using 8 bytes
+ * per slot (and no boxing); it grows at a load factor of 0.5, up to
+ * maxSize elements. Once it is full, values that are not already present
+ * are no longer added (add still returns true for them), and are counted
+ * in overflow: the values already added are kept, so the set stays at
+ * most 16 * maxSize bytes.
+ */
+class LongSet(initial: Int = 1024, val maxSize: Int = LongSet.defaultMaxSize) {
+  require(maxSize > 0 && maxSize <= (1 << 29), "maxSize must be between 1 and 2^29")
+  private var capacity = Integer.highestOneBit(math.max(16, math.min(initial, maxSize)) * 2 - 1)
+  private var slots = new Array[Long](capacity)
+  private var hasZero = false
+  private var count = 0
+  var overflow = 0L
+
+  def size: Int = count
+  def isFull: Boolean = count >= maxSize
+
+  /**
+   * Adds x, returning true if it was not already present
+   */
+  def add(x: Long): Boolean = {
+    if(isFull) {
+      val added = !contains(x)
+      if(added) overflow += 1
+      added
+    } else if(x == 0L) {
+      val added = !hasZero
+      hasZero = true
+      if(added) count += 1
+      added
+    } else {
+      if((count + 1) * 2 > capacity) {
+        grow()
+      }
+      val added = insert(slots, x)
+      if(added) count += 1
+      added
+    }
+  }
+
+  def contains(x: Long): Boolean = {
+    if(x == 0L) {
+      hasZero
+    } else {
+      val mask = capacity - 1
+      var i = LongSet.mix(x).toInt & mask
+      while(slots(i) != 0L && slots(i) != x) {
+        i = (i + 1) & mask
+      }
+      slots(i) == x
+    }
+  }
+
+  private def insert(table: Array[Long], x: Long): Boolean = {
+    val mask = table.length - 1
+    var i = LongSet.mix(x).toInt & mask
+    while(table(i) != 0L) {
+      if(table(i) == x) {
+        return false
+      }
+      i = (i + 1) & mask
+    }
+    table(i) = x
+    true
+  }
+
+  private def grow() {
+    val old = slots
+    capacity *= 2
+    slots = new Array[Long](capacity)
+    old.foreach{e => if(e != 0L) insert(slots, e)}
+  }
+}
+
+object LongSet {
+  /** 2^22 values, at most 64MB */
+  val defaultMaxSize = 1 << 22
+
+  /** The finalisation step of MurmurHash3 (64 bit) */
+  def mix(x: Long): Long = {
+    var h = x
+    h ^= h >>> 33
+    h *= 0xff51afd7ed558ccdL
+    h ^= h >>> 33
+    h *= 0xc4ceb9fe1a85ec53L
+    h ^= h >>> 33
+    h
+  }
+}
+
+/**
+ * Removes duplicate sentences (lines) from the converted text: exact
+ * duplicates, by a 64-bit hash of the line, and, optionally, near
+ * duplicates, by MinHash over token trigrams, with locality-sensitive
+ * hashing (bands of the signature): a sentence is dropped if any band of
+ * its signature was seen before, i.e., if it is likely to be at least
+ * ~75% similar (Jaccard) to an earlier sentence.
+ * Only the hashes are kept, so the work per sentence depends only on its
+ * length, and the memory per sentence kept is fixed (8 bytes, and 8 more
+ * per band for near duplicates); as no sentences are kept, hash
+ * collisions (one in 2^64 for exact duplicates) are not checked for.
+ * Empty lines (document boundaries) are always kept.
+ * Each set of hashes holds at most maxHashes hashes; once it is full,
+ * sentences are still checked against the hashes already kept, but no
+ * more are added, so a later sentence can only be dropped as a duplicate
+ * of one seen before the limit was reached (the summary says how many
+ * were not added).
+ */
+class Deduplicator(near: Boolean, bands: Int = 8, rows: Int = 8, maxHashes: Int = LongSet.defaultMaxSize) {
+  private val exactSeen = new LongSet(1 << 16, maxHashes)
+  private val bandSeen = new LongSet(1 << 16, maxHashes)
+  private val seeds = Array.tabulate(bands * rows){i => LongSet.mix(0x9e3779b97f4a7c15L * (i + 1))}
+  var sentences = 0L
+  var exact = 0L
+  var nearDuplicates = 0L
+
+  def keep(line: String): Boolean = {
+    if(line.isEmpty) {
+      true
+    } else {
+      sentences += 1
+      if(!exactSeen.add(Deduplicator.hash(line))) {
+        exact += 1
+        false
+      } else if(near && !keepNear(line)) {
+        nearDuplicates += 1
+        false
+      } else {
+        true
+      }
+    }
+  }
+
+  /**
+   * Checks the bands of the line's signature, returning false if any was
+   * seen before, and otherwise recording them.
+   */
+  private def keepNear(line: String): Boolean = {
+    val tokens = line.split(" ").filter{_ != ""}.map{Deduplicator.hash}
+    if(tokens.length < 3) {
+      // too short for trigrams, and the exact check is enough
+      true
+    } else {
+      val sig = Array.fill(bands * rows)(Long.MaxValue)
+      var i = 0
+      while(i + 2 < tokens.length) {
+        val shingle = LongSet.mix(tokens(i) * 31 * 31 + tokens(i + 1) * 31 + tokens(i + 2))
+        var j = 0
+        while(j < sig.length) {
+          val h = LongSet.mix(shingle ^ seeds(j))
+          if(h < sig(j)) sig(j) = h
+          j += 1
+        }
+        i += 1
+      }
+      val bandHashes = Array.tabulate(bands){b =>
+        var h = b.toLong
+        var r = 0
+        while(r < rows) {
+          h = LongSet.mix(h * 31 + sig(b * rows + r))
+          r += 1
+        }
+        h
+      }
+      if(bandHashes.exists{bandSeen.contains}) {
+        false
+      } else {
+        bandHashes.foreach{bandSeen.add}
+        true
+      }
+    }
+  }
+
+  /**
+   * Removes the duplicate lines from a document.
+   */
+  def filter(doc: String): String = {
+    val kept = List.newBuilder[String]
+    var start = 0
+    while(start <= doc.length) {
+      val nl = doc.indexOf('\n', start)
+      val end = if(nl == -1) doc.length else nl
+      val line = doc.substring(start, end)
+      if(keep(line)) {
+        kept += line
+      }
+      start = end + 1
+    }
+    kept.result().mkString("\n")
+  }
+
+  /**
+   * The number of hashes that were not kept, as the limit was reached
+   */
+  def overflow: Long = exactSeen.overflow + bandSeen.overflow
+
+  def summary: String = {
+    "" + sentences + " sentences, " + exact + " exact duplicates" +
+      (if(near) ", " + nearDuplicates + " near duplicates" else "") + " removed" +
+      (if(overflow > 0) " (" + overflow + " hashes not kept, over the limit of " + maxHashes + ")" else "")
+  }
+}
+
+object Deduplicator {
+  /** 64-bit FNV-1a of the characters, mixed */
+  def hash(s: String): Long = {
+    var h = 0xcbf29ce484222325L
+    var i = 0
+    while(i < s.length) {
+      h ^= s.charAt(i)
+      h *= 0x100000001b3L
+      i += 1
+    }
+    LongSet.mix(h)
+  }
+}
+// set tabstop=2
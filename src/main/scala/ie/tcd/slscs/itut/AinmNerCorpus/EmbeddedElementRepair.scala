@@ -0,0 +1,175 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import javax.xml.stream.{XMLEventFactory, XMLEventReader, XMLStreamConstants, XMLStreamException}
+import javax.xml.stream.events.XMLEvent
+
+/**
+ * Repairs elements embedded in <persName> on the event stream, as
+ * scripts/fix-embedded-elements.pl used to do on the files:
+ * <hide> is moved to after the <persName>, and <placeName> is replaced
+ * by its text, so that the <persName> contains only text.
+ * All of the methods that read events (nextEvent, next, nextTag, peek,
+ * hasNext and getElementText) read the repaired events (next, through
+ * FilteredEventReader); remove is not supported.
+ */
+class EmbeddedElementRepair(reader: XMLEventReader) extends FilteredEventReader(reader) {
+  private val events = EmbeddedElementRepair.eventFactory
+  private val pending = new scala.collection.mutable.Queue[XMLEvent]
+  // the last event returned, for getElementText
+  private var last: XMLEvent = null
+
+  private def isStart(e: XMLEvent, name: String): Boolean = e.isStartElement && e.asStartElement.getName.getLocalPart == name
+
+  /**
+   * Reads the remainder of an element, including its end tag.
+   */
+  private def readSubtree(): List[XMLEvent] = {
+    val out = List.newBuilder[XMLEvent]
+    var depth = 0
+    while(depth >= 0) {
+      val e = super.nextEvent()
+      if(e.isStartElement) {
+        depth += 1
+      } else if(e.isEndElement) {
+        depth -= 1
+      }
+      out += e
+    }
+    out.result()
+  }
+
+  private def repair(start: XMLEvent) {
+    val body = readSubtree()
+    if(!body.exists{e => isStart(e, "hide") || isStart(e, "placeName")}) {
+      pending.enqueue(start)
+      pending.enqueue(body: _*)
+    } else {
+      val text = new StringBuilder
+      val hidden = List.newBuilder[XMLEvent]
+      var depth = 0
+      var inhide = false
+      body.init.foreach{e =>
+        if(e.isStartElement) {
+          if(depth == 0 && isStart(e, "hide")) {
+            inhide = true
+          }
+          depth += 1
+        } else if(e.isEndElement) {
+          depth -= 1
+        }
+        if(inhide) {
+          hidden += e
+        } else if(e.isCharacters) {
+          text.append(e.asCharacters.getData)
+        }
+        if(depth == 0) {
+          inhide = false
+        }
+      }
+      pending.enqueue(start)
+      pending.enqueue(events.createCharacters(text.toString))
+      pending.enqueue(body.last)
+      pending.enqueue(hidden.result(): _*)
+    }
+  }
+
+  private def fill() {
+    if(pending.isEmpty && super.hasNext) {
+      val e = super.nextEvent()
+      if(isStart(e, "persName")) {
+        repair(e)
+      } else {
+        pending.enqueue(e)
+      }
+    }
+  }
+
+  override def hasNext: Boolean = {
+    fill()
+    !pending.isEmpty
+  }
+  override def nextEvent(): XMLEvent = {
+    if(!hasNext) {
+      throw new NoSuchElementException("No more events")
+    }
+    last = pending.dequeue()
+    last
+  }
+  override def peek(): XMLEvent = {
+    if(hasNext) pending.head else null
+  }
+
+  private def isIgnorable(e: XMLEvent): Boolean = e.getEventType match {
+    case XMLStreamConstants.COMMENT | XMLStreamConstants.PROCESSING_INSTRUCTION | XMLStreamConstants.SPACE => true
+    case XMLStreamConstants.CHARACTERS => e.asCharacters.isWhiteSpace
+    case _ => false
+  }
+  /**
+   * Skips whitespace, comments and processing instructions, and returns
+   * the next start or end element.
+   */
+  override def nextTag(): XMLEvent = {
+    var e = nextEvent()
+    while(isIgnorable(e)) {
+      e = nextEvent()
+    }
+    if(!e.isStartElement && !e.isEndElement) {
+      throw new XMLStreamException("Expected a start or end element", e.getLocation)
+    }
+    e
+  }
+  /**
+   * Reads the text of a text-only element, the start of which was the last
+   * event read, up to and including its end.
+   */
+  override def getElementText(): String = {
+    if(last == null || !last.isStartElement) {
+      throw new XMLStreamException("Not at the start of an element")
+    }
+    val text = new StringBuilder
+    var e = nextEvent()
+    while(!e.isEndElement) {
+      if(e.isCharacters) {
+        text.append(e.asCharacters.getData)
+      } else if(e.isEntityReference) {
+        text.append(e.asInstanceOf[javax.xml.stream.events.EntityReference].getDeclaration.getReplacementText)
+      } else if(e.isStartElement) {
+        throw new XMLStreamException("Element text contains an element", e.getLocation)
+      } else if(e.isEndDocument) {
+        throw new XMLStreamException("End of document in element text", e.getLocation)
+      }
+      e = nextEvent()
+    }
+    text.toString
+  }
+  override def remove() {
+    throw new UnsupportedOperationException("remove")
+  }
+}
+object EmbeddedElementRepair {
+  lazy val eventFactory: XMLEventFactory = XMLEventFactory.newInstance()
+}
+// set tabstop=2
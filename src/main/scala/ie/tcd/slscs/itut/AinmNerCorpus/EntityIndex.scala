@@ -0,0 +1,350 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io._
+import java.nio.ByteBuffer
+
+import BinaryIO._
+
+/**
+ * A mention of an entity: the document (its number in the index), the
+ * paragraph, the span of the mention in the text of the paragraph, and
+ * the text of the mention.
+ */
+case class EntityPosting(doc: Int, paragraph: Int, start: Int, end: Int, text: String)
+
+/**
+ * An inverted index from the ainm.ie and geonames IDs of the entities to
+ * their mentions, for finding every mention of a person or a place
+ * without reading the corpus again.
+ *
+ * The keys are "person:" or "place:" and the ainm.ie ID, or "geonames:"
+ * and the geonames ID (of a place or an educational institution).
+ *
+ * The file begins with the magic "AINMENT1", then the number of
+ * documents, the number of keys, and the lengths of the sections that
+ * follow: the document table, the key table, the key strings, and the
+ * posting lists. The tables hold a (big-endian) int offset per document
+ * or key, so that they can be searched in place; the keys are sorted by
+ * their UTF-8 bytes. Each key's posting list has the number of postings,
+ * the distinct texts of the mentions, and, for each posting, the
+ * differences from the previous one of the document, the paragraph (or
+ * the paragraph itself, in a new document) and the start (or the start
+ * itself, in a new paragraph), the length, and the number of the text.
+ */
+object EntityIndex {
+  val magic = "AINMENT1"
+
+  /**
+   * The keys of a piece of text, if it is an entity with an ID
+   */
+  def keys(t: TextPiece): List[String] = {
+    def key(prefix: String, id: String): List[String] = if(id == null || id.trim == "") Nil else List(prefix + id.trim)
+    t match {
+      case PersonMention(id, _, _) => key("person:", id)
+      case PlaceName(id, _, _, geonames, _) => key("place:", id) ++ key("geonames:", geonames)
+      case EduInst(_, _, geonames) => key("geonames:", geonames)
+      case _ => Nil
+    }
+  }
+
+  /**
+   * The keyed mentions in a document, with the document number left as 0
+   */
+  def postings(paras: List[Paragraph]): List[(String, EntityPosting)] = {
+    val out = List.newBuilder[(String, EntityPosting)]
+    paras.zipWithIndex.foreach{case (p, pi) =>
+      var offset = 0
+      p.children.foreach{c =>
+        val text = c.getText
+        keys(c).foreach{k => out += ((k, EntityPosting(0, pi, offset, offset + text.length, text)))}
+        offset += text.length
+      }
+    }
+    out.result()
+  }
+
+  private[AinmNerCorpus] def compareBytes(a: Array[Byte], b: Array[Byte]): Int = {
+    val n = math.min(a.length, b.length)
+    var i = 0
+    while(i < n) {
+      val c = (a(i) & 0xff) - (b(i) & 0xff)
+      if(c != 0) return c
+      i += 1
+    }
+    a.length - b.length
+  }
+
+  private def writeInts(out: OutputStream, values: Seq[Int]) {
+    val b = ByteBuffer.allocate(values.length * 4)
+    values.foreach{b.putInt}
+    out.write(b.array)
+  }
+
+  private def encodePostings(out: OutputStream, l: Seq[EntityPosting]) {
+    val forms = l.map{_.text}.distinct.toArray
+    val codes = forms.zipWithIndex.toMap
+    writeVarInt(out, l.length)
+    writeVarInt(out, forms.length)
+    forms.foreach{e => writeString(out, e)}
+    var prev = EntityPosting(0, 0, 0, 0, "")
+    l.foreach{e =>
+      val sameDoc = e.doc == prev.doc
+      val samePara = sameDoc && e.paragraph == prev.paragraph
+      writeVarInt(out, e.doc - prev.doc)
+      writeVarInt(out, if(sameDoc) e.paragraph - prev.paragraph else e.paragraph)
+      writeVarInt(out, if(samePara) e.start - prev.start else e.start)
+      writeVarInt(out, e.end - e.start)
+      writeVarInt(out, codes(e.text))
+      prev = e
+    }
+  }
+
+  /**
+   * Writes the index; the postings of each key must be in order of
+   * document, paragraph, and start.
+   */
+  def write(docs: Seq[String], postings: scala.collection.Map[String, Seq[EntityPosting]], f: File) {
+    val sorted = postings.keys.toArray.map{k => (k.getBytes(utf8), k)}.sortWith{(a, b) => compareBytes(a._1, b._1) < 0}
+    val docNames = new ByteArrayOutputStream
+    val docOffsets = docs.map{d =>
+      val off = docNames.size
+      writeString(docNames, d)
+      off
+    }
+    val keyNames = new ByteArrayOutputStream
+    val lists = new ByteArrayOutputStream
+    val keyOffsets = sorted.toSeq.flatMap{case (b, k) =>
+      val off = (keyNames.size, lists.size)
+      writeVarInt(keyNames, b.length)
+      keyNames.write(b)
+      encodePostings(lists, postings(k))
+      List(off._1, off._2)
+    }
+    val docTable = new ByteArrayOutputStream
+    writeInts(docTable, docOffsets)
+    docNames.writeTo(docTable)
+    val keyTable = new ByteArrayOutputStream
+    writeInts(keyTable, keyOffsets)
+
+    val out = new BufferedOutputStream(new FileOutputStream(f))
+    try {
+      out.write(magic.getBytes(utf8))
+      writeVarInt(out, docs.length)
+      writeVarInt(out, sorted.length)
+      writeVarInt(out, docTable.size)
+      writeVarInt(out, keyTable.size)
+      writeVarInt(out, keyNames.size)
+      writeVarInt(out, lists.size)
+      docTable.writeTo(out)
+      keyTable.writeTo(out)
+      keyNames.writeTo(out)
+      lists.writeTo(out)
+    } finally {
+      out.close()
+    }
+  }
+
+  /**
+   * Reads the documents (in parallel, keeping their order) and writes
+   * the index; returns the number of documents and of postings.
+   */
+  def build(docs: Iterator[CorpusDocument], out: File, threads: Int, stax: Boolean): (Int, Long) = {
+    val names = Vector.newBuilder[String]
+    val postings = scala.collection.mutable.HashMap.empty[String, scala.collection.mutable.ArrayBuffer[EntityPosting]]
+    var ndocs = 0
+    var npostings = 0L
+    AinmProcess.orderedMap(docs, threads){d => (d.name, EntityIndex.postings(AinmProcess.readDocument(d, stax)))}.foreach{case (name, l) =>
+      names += name
+      l.foreach{case (k, p) =>
+        postings.getOrElseUpdate(k, scala.collection.mutable.ArrayBuffer.empty[EntityPosting]) += p.copy(doc = ndocs)
+      }
+      ndocs += 1
+      npostings += l.length
+    }
+    write(names.result(), postings, out)
+    (ndocs, npostings)
+  }
+}
+
+/**
+ * Reads an entity index, in place: opening the index only reads its
+ * header, and a lookup is a binary search of the keys, and the decoding
+ * of one posting list.
+ */
+class EntityIndex(f: File) {
+  import EntityIndex._
+
+  private val buf = BinaryIO.map(f)
+  val (documents, size, docTable, keyTable, keyNames, lists) = {
+    val in = buf.duplicate
+    checkMagic(in, magic, f)
+    val ndocs = readVarInt(in)
+    val nkeys = readVarInt(in)
+    val lengths = Array.fill(4)(readVarInt(in))
+    val offsets = lengths.scanLeft(in.position){_ + _}
+    if(offsets(4) > buf.limit) {
+      throw new IOException("Truncated entity index: " + f.getPath)
+    }
+    (ndocs, nkeys, offsets(0), offsets(1), offsets(2), offsets(3))
+  }
+
+  private def at(off: Int): ByteBuffer = {
+    val in = buf.duplicate
+    in.position(off)
+    in
+  }
+
+  /** The file name of a document */
+  def document(doc: Int): String = {
+    if(doc < 0 || doc >= documents) {
+      throw new IndexOutOfBoundsException("No such document: " + doc)
+    }
+    readString(at(docTable + documents * 4 + buf.getInt(docTable + doc * 4)))
+  }
+
+  private def keyBytes(i: Int): Array[Byte] = {
+    val in = at(keyNames + buf.getInt(keyTable + i * 8))
+    val b = new Array[Byte](readVarInt(in))
+    in.get(b)
+    b
+  }
+  def key(i: Int): String = new String(keyBytes(i), utf8)
+
+  /**
+   * The number of the first key that is not less than the given key, or
+   * size if there is none.
+   */
+  private def lowerBound(b: Array[Byte]): Int = {
+    var lo = 0
+    var hi = size
+    while(lo < hi) {
+      val mid = (lo + hi) >>> 1
+      if(compareBytes(keyBytes(mid), b) < 0) lo = mid + 1 else hi = mid
+    }
+    lo
+  }
+
+  /** The number of a key, or -1 if it is not in the index */
+  def find(k: String): Int = {
+    val b = k.getBytes(utf8)
+    val i = lowerBound(b)
+    if(i < size && compareBytes(keyBytes(i), b) == 0) i else -1
+  }
+
+  def contains(k: String): Boolean = find(k) != -1
+
+  /** The keys that start with the prefix, e.g., "person:" */
+  def keys(prefix: String = ""): Iterator[String] = {
+    (lowerBound(prefix.getBytes(utf8)) until size).iterator.map{key}.takeWhile{_.startsWith(prefix)}
+  }
+
+  private def list(i: Int): ByteBuffer = at(lists + buf.getInt(keyTable + i * 8 + 4))
+
+  /** The number of mentions of an entity */
+  def count(k: String): Int = {
+    val i = find(k)
+    if(i == -1) 0 else readVarInt(list(i))
+  }
+
+  /** The mentions of an entity, in order of document */
+  def postings(k: String): IndexedSeq[EntityPosting] = {
+    val i = find(k)
+    if(i == -1) {
+      IndexedSeq.empty[EntityPosting]
+    } else {
+      val in = list(i)
+      val n = readVarInt(in)
+      val forms = Array.fill(readVarInt(in))(readString(in))
+      val out = new Array[EntityPosting](n)
+      var prev = EntityPosting(0, 0, 0, 0, "")
+      for(j <- 0 until n) {
+        val ddoc = readVarInt(in)
+        val para = readVarInt(in)
+        val start = readVarInt(in)
+        val len = readVarInt(in)
+        val text = forms(readVarInt(in))
+        val doc = prev.doc + ddoc
+        val paragraph = if(ddoc == 0) prev.paragraph + para else para
+        val s = if(ddoc == 0 && paragraph == prev.paragraph) prev.start + start else start
+        prev = EntityPosting(doc, paragraph, s, s + len, text)
+        out(j) = prev
+      }
+      out.toIndexedSeq
+    }
+  }
+
+  /** The documents that mention an entity */
+  def documentsOf(k: String): IndexedSeq[Int] = postings(k).map{_.doc}.distinct
+}
+
+object EntityIndexBuilder extends App {
+  val usage = """Usage: EntityIndexBuilder [--stax] [--threads N] [--recursive] directory|archive index.bin"""
+  case class Options(stax: Boolean = false, threads: Int = 1, recursive: Boolean = false,
+                     positional: List[String] = Nil)
+  def parseOptions(l: List[String], o: Options): Options = l match {
+    case "--stax" :: xs => parseOptions(xs, o.copy(stax = true))
+    case "--threads" :: n :: xs if n.matches("[0-9]+") && n.toInt > 0 => parseOptions(xs, o.copy(threads = n.toInt))
+    case "--recursive" :: xs => parseOptions(xs, o.copy(recursive = true))
+    case x :: xs if x.startsWith("--") => throw new Exception("Unknown option: " + x + "\n" + usage)
+    case x :: xs => parseOptions(xs, o.copy(positional = o.positional :+ x))
+    case Nil => o
+  }
+  val opts = parseOptions(args.toList, Options())
+  if(opts.positional.length != 2) {
+    throw new Exception(usage)
+  }
+  val docs = CorpusDocument.documents(new File(opts.positional(0)), opts.recursive)
+  val (ndocs, npostings) = EntityIndex.build(docs, new File(opts.positional(1)), opts.threads, opts.stax)
+  System.err.println("Indexed " + npostings + " mentions in " + ndocs + " documents")
+  System.exit(0)
+}
+
+/**
+ * Prints the mentions of the given entities, one per line: the key, the
+ * document ID, the paragraph, the start and end, and the text; or, with
+ * --count, the number of mentions, or with --prefix, the keys starting
+ * with each argument, and their number of mentions.
+ */
+object EntityIndexQuery extends App {
+  val usage = """Usage: EntityIndexQuery index.bin [--count|--prefix] key..."""
+  if(args.length < 2) {
+    throw new Exception(usage)
+  }
+  val index = new EntityIndex(new File(args(0)))
+  val out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8")))
+  args.toList.tail match {
+    case "--count" :: keys => keys.foreach{k => out.println(k + "\t" + index.count(k))}
+    case "--prefix" :: prefixes => prefixes.foreach{p => index.keys(p).foreach{k => out.println(k + "\t" + index.count(k))}}
+    case x :: _ if x.startsWith("--") => throw new Exception("Unknown option: " + x + "\n" + usage)
+    case keys => keys.foreach{k =>
+      index.postings(k).foreach{p =>
+        out.println(List(k, AinmProcess.documentId(index.document(p.doc)), p.paragraph, p.start, p.end, p.text).mkString("\t"))
+      }
+    }
+  }
+  out.close()
+}
+// set tabstop=2
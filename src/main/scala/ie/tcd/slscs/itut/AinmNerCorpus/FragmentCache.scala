@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * A bounded, thread-safe cache of the results of a function of short
+ * strings (tokenising or sentence splitting the same names and bits of
+ * text over and over). The entries are split over a number of stripes,
+ * each a LinkedHashMap in access order, evicting the least recently used
+ * entry once it holds capacity / stripes entries; strings longer than
+ * maxLength are not cached.
+ * The values are shared between callers, so must not be modified.
+ */
+class FragmentCache[V <: AnyRef](val name: String, capacity: Int, maxLength: Int = 64, stripes: Int = 16) {
+  private val perStripe = math.max(1, capacity / stripes)
+  private val maps = Array.fill(stripes) {
+    new java.util.LinkedHashMap[String, V](16, 0.75f, true) {
+      override def removeEldestEntry(e: java.util.Map.Entry[String, V]): Boolean = size > perStripe
+    }
+  }
+  val hits = new LongAdder
+  val misses = new LongAdder
+
+  def get(key: String)(compute: String => V): V = {
+    if(key.length > maxLength) {
+      compute(key)
+    } else {
+      val map = maps((key.hashCode & 0x7fffffff) % stripes)
+      val cached = map.synchronized { map.get(key) }
+      if(cached != null) {
+        hits.increment()
+        cached
+      } else {
+        misses.increment()
+        val value = compute(key)
+        map.synchronized { map.put(key, value) }
+        value
+      }
+    }
+  }
+
+  def size: Int = maps.map{m => m.synchronized { m.size }}.sum
+
+  def hitRatio: Double = {
+    val total = hits.sum + misses.sum
+    if(total == 0) 0.0 else hits.sum.toDouble / total
+  }
+
+  def summary: String = {
+    name + " cache: " + hits.sum + " hits, " + misses.sum + " misses (" +
+      "%.1f".formatLocal(java.util.Locale.ROOT, hitRatio * 100) + "%), " + size + " entries"
+  }
+}
+// set tabstop=2
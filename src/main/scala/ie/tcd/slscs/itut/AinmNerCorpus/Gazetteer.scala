@@ -0,0 +1,361 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io._
+import java.nio.charset.Charset
+
+import AinmProcess.{EntityReference, ainmTextPieceToNER}
+
+/**
+ * An Aho-Corasick automaton over the names in the corpus, for tagging raw
+ * text with the same markup that OpenNLPConverter writes.
+ *
+ * The trie is stored in arrays, with the states in breadth-first order
+ * and the transitions of each state contiguous and sorted by character
+ * (transitions from the root are also in a direct lookup table).
+ * output holds the pattern that ends at a state, if any, and dict the
+ * nearest state on the failure path that has an output.
+ */
+class Gazetteer(val types: Array[String], val lengths: Array[Int], val kinds: Array[Byte],
+                first: Array[Int], labels: Array[Char], targets: Array[Int],
+                fail: Array[Int], output: Array[Int], dict: Array[Int]) {
+  private val root = {
+    val r = Array.fill(65536)(-1)
+    for(i <- first(0) until first(1)) {
+      r(labels(i)) = targets(i)
+    }
+    r
+  }
+
+  def states: Int = fail.length
+
+  private def next(state: Int, c: Char): Int = {
+    if(state == 0) {
+      root(c)
+    } else {
+      var lo = first(state)
+      var hi = first(state + 1) - 1
+      while(lo <= hi) {
+        val mid = (lo + hi) >>> 1
+        val l = labels(mid)
+        if(l < c) lo = mid + 1
+        else if(l > c) hi = mid - 1
+        else return targets(mid)
+      }
+      -1
+    }
+  }
+
+  private def isWordChar(c: Char): Boolean = Character.isLetterOrDigit(c)
+
+  /**
+   * The leftmost-longest, non-overlapping matches in the text that start
+   * and end at word boundaries, as (start, end, pattern) triples.
+   */
+  def matches(text: CharSequence): Array[(Int, Int, Int)] = {
+    val len = text.length
+    // longest match starting at each position
+    val best = new Array[Int](len + 1)
+    val bestPat = new Array[Int](len + 1)
+    var state = 0
+    var i = 0
+    while(i < len) {
+      val c = text.charAt(i)
+      var g = next(state, c)
+      while(g == -1 && state != 0) {
+        state = fail(state)
+        g = next(state, c)
+      }
+      state = if(g == -1) 0 else g
+      if(i + 1 == len || !isWordChar(text.charAt(i + 1)) || !isWordChar(c)) {
+        var o = if(output(state) != -1) state else dict(state)
+        while(o > 0) {
+          val pat = output(o)
+          val start = i + 1 - lengths(pat)
+          if(lengths(pat) > best(start) && (start == 0 || !isWordChar(text.charAt(start - 1)) || !isWordChar(text.charAt(start)))) {
+            best(start) = lengths(pat)
+            bestPat(start) = pat
+          }
+          o = dict(o)
+        }
+      }
+      i += 1
+    }
+    val out = Array.newBuilder[(Int, Int, Int)]
+    i = 0
+    while(i < len) {
+      if(best(i) > 0) {
+        out += ((i, i + best(i), bestPat(i)))
+        i += best(i)
+      } else {
+        i += 1
+      }
+    }
+    out.result()
+  }
+
+  /**
+   * Tags a line of text as <START:type> ... <END>
+   */
+  def tag(line: String, out: Writer) {
+    var last = 0
+    matches(line).foreach{case (start, end, pat) =>
+      out.write(line, last, start - last)
+      out.write("<START:")
+      out.write(types(kinds(pat)))
+      out.write("> ")
+      out.write(line, start, end - start)
+      out.write(" <END>")
+      last = end
+    }
+    out.write(line, last, line.length - last)
+  }
+
+  def write(f: File) {
+    val out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16))
+    try {
+      out.writeBytes(Gazetteer.magic)
+      out.writeInt(types.length)
+      types.foreach{out.writeUTF}
+      out.writeInt(lengths.length)
+      lengths.foreach{out.writeInt}
+      out.write(kinds)
+      out.writeInt(fail.length)
+      first.foreach{out.writeInt}
+      labels.foreach{e => out.writeChar(e)}
+      targets.foreach{out.writeInt}
+      fail.foreach{out.writeInt}
+      output.foreach{out.writeInt}
+      dict.foreach{out.writeInt}
+    } finally {
+      out.close()
+    }
+  }
+}
+
+object Gazetteer {
+  val magic = "AINMGAZ1"
+
+  def read(f: File): Gazetteer = {
+    val in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16))
+    try {
+      val m = new Array[Byte](magic.length)
+      in.readFully(m)
+      if(new String(m, "US-ASCII") != magic) {
+        throw new IOException("Not a gazetteer: " + f.getPath)
+      }
+      val types = Array.fill(in.readInt)(in.readUTF)
+      val npats = in.readInt
+      val lengths = Array.fill(npats)(in.readInt)
+      val kinds = new Array[Byte](npats)
+      in.readFully(kinds)
+      val nstates = in.readInt
+      val first = Array.fill(nstates + 1)(in.readInt)
+      val labels = Array.fill(first(nstates))(in.readChar)
+      val targets = Array.fill(first(nstates))(in.readInt)
+      val fail = Array.fill(nstates)(in.readInt)
+      val output = Array.fill(nstates)(in.readInt)
+      val dict = Array.fill(nstates)(in.readInt)
+      new Gazetteer(types, lengths, kinds, first, labels, targets, fail, output, dict)
+    } finally {
+      in.close()
+    }
+  }
+
+  /**
+   * Builds the automaton from (name, type) pairs; names should be distinct.
+   */
+  def build(entries: Seq[(String, String)]): Gazetteer = {
+    val sorted = entries.filter{_._1.length > 0}.sortBy{_._1}.toArray
+    val types = sorted.map{_._2}.distinct.sorted
+    val typeIndex = types.zipWithIndex.toMap
+    val pats = sorted.map{_._1}
+    val lengths = pats.map{_.length}
+    val kinds = sorted.map{e => typeIndex(e._2).toByte}
+
+    // breadth-first: a state is a range of the sorted patterns sharing a
+    // prefix of length depth, so the children of a state are contiguous
+    val first = Array.newBuilder[Int]
+    val labels = Array.newBuilder[Char]
+    val targets = Array.newBuilder[Int]
+    val output = Array.newBuilder[Int]
+    val parent = Array.newBuilder[Int]
+    val via = Array.newBuilder[Char]
+    val queue = new scala.collection.mutable.Queue[(Int, Int, Int)]
+    queue.enqueue((0, pats.length, 0))
+    parent += -1
+    via += 0.toChar
+    var nstates = 1
+    var ntrans = 0
+    var state = 0
+    while(!queue.isEmpty) {
+      val (lo, hi, depth) = queue.dequeue()
+      first += ntrans
+      var i = lo
+      if(i < hi && pats(i).length == depth) {
+        output += i
+        i += 1
+      } else {
+        output += -1
+      }
+      while(i < hi) {
+        val c = pats(i).charAt(depth)
+        var j = i
+        while(j < hi && pats(j).charAt(depth) == c) j += 1
+        labels += c
+        targets += nstates
+        parent += state
+        via += c
+        queue.enqueue((i, j, depth + 1))
+        nstates += 1
+        ntrans += 1
+        i = j
+      }
+      state += 1
+    }
+    first += ntrans
+    val (f, l, t, o) = (first.result(), labels.result(), targets.result(), output.result())
+    val (p, v) = (parent.result(), via.result())
+    val fail = new Array[Int](nstates)
+    val dict = new Array[Int](nstates)
+    def goto(s: Int, c: Char): Int = {
+      var lo = f(s)
+      var hi = f(s + 1) - 1
+      while(lo <= hi) {
+        val mid = (lo + hi) >>> 1
+        if(l(mid) < c) lo = mid + 1
+        else if(l(mid) > c) hi = mid - 1
+        else return t(mid)
+      }
+      -1
+    }
+    for(s <- 1 until nstates) {
+      if(p(s) == 0) {
+        fail(s) = 0
+      } else {
+        var fs = fail(p(s))
+        while(fs != 0 && goto(fs, v(s)) == -1) {
+          fs = fail(fs)
+        }
+        val g = goto(fs, v(s))
+        fail(s) = if(g == -1 || g == s) 0 else g
+      }
+      dict(s) = if(o(fail(s)) != -1) fail(s) else dict(fail(s))
+    }
+    new Gazetteer(types, lengths, kinds, f, l, t, fail, o, dict)
+  }
+
+  /**
+   * The names of the entities in a paragraph, with their NER types: the
+   * surface text and baseform, both as they are and tokenised.
+   */
+  def names(p: Paragraph): List[(String, String)] = {
+    p.children.flatMap{c =>
+      ainmTextPieceToNER(c) match {
+        case EntityReference(t, kind) => {
+          val bf = c match {
+            case PersonMention(_, bf, _) => bf
+            case PlaceName(_, bf, _, _, _) => bf
+            case Party(bf, _) => bf
+            case Opus(_, bf, _) => bf
+            case Conradh(_, bf, _) => bf
+            case EduInst(bf, _, _) => bf
+            case _ => ""
+          }
+          List(t, bf).map{_.trim}.filter{_ != ""}.flatMap{n =>
+            List(n, AinmProcess.tokenize(n).mkString(" "))
+          }.distinct.map{n => (n, kind)}
+        }
+        case _ => Nil
+      }
+    }
+  }
+
+  /**
+   * Builds a gazetteer from the documents (see CorpusDocument.documents);
+   * each name is given the type it has most often, and names seen fewer
+   * than minCount times are dropped.
+   */
+  def fromDocuments(docs: Iterator[CorpusDocument], threads: Int, minCount: Int, stax: Boolean): Gazetteer = {
+    val counts = scala.collection.mutable.HashMap.empty[(String, String), Int]
+    AinmProcess.orderedMap(docs, threads){d => AinmProcess.readDocument(d, stax).flatMap{names}}.foreach{l =>
+      l.foreach{e => counts(e) = counts.getOrElse(e, 0) + 1}
+    }
+    val best = counts.toList.groupBy{_._1._1}.toList.flatMap{case (name, l) =>
+      val kind = l.maxBy{e => (e._2, e._1._2)}._1._2
+      if(l.map{_._2}.sum >= minCount) Some((name, kind)) else None
+    }
+    build(best)
+  }
+}
+
+object GazetteerBuilder extends App {
+  val usage = """Usage: GazetteerBuilder [--stax] [--threads N] [--recursive] [--min-count N] directory|archive gazetteer.bin"""
+  case class Options(stax: Boolean = false, threads: Int = 1, recursive: Boolean = false, minCount: Int = 1,
+                     positional: List[String] = Nil)
+  def parseOptions(l: List[String], o: Options): Options = l match {
+    case "--stax" :: xs => parseOptions(xs, o.copy(stax = true))
+    case "--threads" :: n :: xs if n.matches("[0-9]+") && n.toInt > 0 => parseOptions(xs, o.copy(threads = n.toInt))
+    case "--recursive" :: xs => parseOptions(xs, o.copy(recursive = true))
+    case "--min-count" :: n :: xs if n.matches("[0-9]+") => parseOptions(xs, o.copy(minCount = n.toInt))
+    case x :: xs if x.startsWith("--") => throw new Exception("Unknown option: " + x + "\n" + usage)
+    case x :: xs => parseOptions(xs, o.copy(positional = o.positional :+ x))
+    case Nil => o
+  }
+  val opts = parseOptions(args.toList, Options())
+  if(opts.positional.length != 2) {
+    throw new Exception(usage)
+  }
+  val docs = CorpusDocument.documents(new File(opts.positional(0)), opts.recursive)
+  val gaz = Gazetteer.fromDocuments(docs, opts.threads, opts.minCount, opts.stax)
+  gaz.write(new File(opts.positional(1)))
+  System.err.println("Names: " + gaz.lengths.length + ", states: " + gaz.states)
+  System.exit(0)
+}
+
+/**
+ * Tags text, a line at a time, with the names in a gazetteer. The input
+ * should be tokenised (e.g., ner-plain.txt) for the output to match the
+ * format of OpenNLPConverter.
+ */
+object GazetteerTagger extends App {
+  val usage = """Usage: GazetteerTagger gazetteer.bin [input [output]]"""
+  if(args.length < 1 || args.length > 3) {
+    throw new Exception(usage)
+  }
+  val utf8 = Charset.forName("UTF-8")
+  val gaz = Gazetteer.read(new File(args(0)))
+  val in = new BufferedReader(new InputStreamReader(if(args.length > 1) new FileInputStream(args(1)) else System.in, utf8), 1 << 16)
+  val out = new BufferedWriter(new OutputStreamWriter(if(args.length > 2) new FileOutputStream(args(2)) else System.out, utf8), 1 << 16)
+  var line = in.readLine()
+  while(line != null) {
+    gaz.tag(line, out)
+    out.write('\n')
+    line = in.readLine()
+  }
+  out.close()
+  in.close()
+}
+// set tabstop=2
@@ -0,0 +1,183 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io._
+import java.util.concurrent.{Callable, ExecutionException, Executors}
+
+import opennlp.tools.namefind._
+import opennlp.tools.util.{ObjectStreamUtils, TrainingParameters}
+import opennlp.tools.util.eval.FMeasure
+
+/**
+ * Trains OpenNLP name finder models directly from the corpus, rather than
+ * from the text written by OpenNLPConverter: the documents are read and
+ * projected (as with --project) once, and the samples for each type are
+ * fed to NameFinderME.train from memory.
+ */
+object NameFinderTraining {
+  case class TrainingDocument(id: String, sentences: List[ProjectedSentence])
+
+  /**
+   * Reads the documents from a directory (and, if recursive, its
+   * subdirectories) or archive of the corpus, or from a binary corpus
+   * (.bin, from BinaryCorpusBuilder), in the order they are listed
+   */
+  def loadDocuments(source: File, stax: Boolean, threads: Int, recursive: Boolean = false): List[TrainingDocument] = {
+    if(source.isFile && source.getName.endsWith(".bin")) {
+      new BinaryCorpusReader(source).documents.map{d =>
+        TrainingDocument(d.id, d.paragraphs.flatMap{_.projected}.toList)
+      }.toList
+    } else {
+      AinmProcess.orderedMap(CorpusDocument.documents(source, recursive), threads){d =>
+        TrainingDocument(AinmProcess.documentId(d.name), OffsetProjection.projectParagraphs(AinmProcess.readDocument(d, stax)))
+      }.toList
+    }
+  }
+
+  /**
+   * Whether a document is held out for testing: by a hash of its ID, so
+   * that the split is the same from run to run, and as documents are
+   * added, for a given seed.
+   */
+  def isTest(id: String, percent: Int, seed: Long): Boolean = {
+    ((LongSet.mix(Deduplicator.hash(id) ^ seed) >>> 1) % 100) < percent
+  }
+
+  /** The training and test documents, by isTest */
+  def split(docs: List[TrainingDocument], percent: Int, seed: Long): (List[TrainingDocument], List[TrainingDocument]) = {
+    val (test, train) = docs.partition{d => isTest(d.id, percent, seed)}
+    (train, test)
+  }
+
+  /**
+   * The samples for one type; adaptive data is cleared at the start of
+   * each document.
+   */
+  def samples(docs: List[TrainingDocument], kind: String): java.util.List[NameSample] = {
+    val out = new java.util.ArrayList[NameSample]
+    docs.foreach{d =>
+      d.sentences.zipWithIndex.foreach{case (s, i) => out.add(s.toNameSample(kind, i == 0))}
+    }
+    out
+  }
+
+  def train(kind: String, samples: java.util.List[NameSample], params: TrainingParameters): TokenNameFinderModel = {
+    val factory = new TokenNameFinderFactory(null, new java.util.HashMap[String, AnyRef], new BioCodec)
+    NameFinderME.train("ga", kind, ObjectStreamUtils.createObjectStream(samples), params, factory)
+  }
+
+  def evaluate(model: TokenNameFinderModel, samples: java.util.List[NameSample]): FMeasure = {
+    val evaluator = new TokenNameFinderEvaluator(new NameFinderME(model))
+    evaluator.evaluate(ObjectStreamUtils.createObjectStream(samples))
+    evaluator.getFMeasure
+  }
+
+  def modelName(kind: String): String = "ga-ner-" + kind + ".bin"
+}
+
+object NameFinderTrainer extends App {
+  import NameFinderTraining._
+
+  val usage = """Usage: NameFinderTrainer [options] corpus outdir [type[,type...]]
+Where corpus is a directory or archive of the downloaded XML, or a
+binary corpus (.bin), and type is person, organization, or location
+(default: all three, trained in parallel).
+Options:
+  --stax            read the XML with the streaming (StAX) reader
+  --threads N       read files using N threads
+  --recursive       also look for files in subdirectories of the directory
+  --test-percent P  hold out P% of the documents (by ID) for testing
+                    (default 10; 0 to train on everything)
+  --seed N          seed for the choice of test documents
+  --iterations N    training iterations (default 100)
+  --cutoff N        feature cutoff (default 5)"""
+  case class Options(stax: Boolean = false, threads: Int = 1, recursive: Boolean = false, testPercent: Int = 10, seed: Long = 0L,
+                     iterations: Int = 100, cutoff: Int = 5, positional: List[String] = Nil)
+  def num(s: String): Boolean = s.matches("[0-9]+")
+  def parseOptions(l: List[String], o: Options): Options = l match {
+    case "--stax" :: xs => parseOptions(xs, o.copy(stax = true))
+    case "--threads" :: n :: xs if num(n) && n.toInt > 0 => parseOptions(xs, o.copy(threads = n.toInt))
+    case "--recursive" :: xs => parseOptions(xs, o.copy(recursive = true))
+    case "--test-percent" :: n :: xs if num(n) && n.toInt < 100 => parseOptions(xs, o.copy(testPercent = n.toInt))
+    case "--seed" :: n :: xs if num(n) => parseOptions(xs, o.copy(seed = n.toLong))
+    case "--iterations" :: n :: xs if num(n) => parseOptions(xs, o.copy(iterations = n.toInt))
+    case "--cutoff" :: n :: xs if num(n) => parseOptions(xs, o.copy(cutoff = n.toInt))
+    case x :: xs if x.startsWith("--") => throw new Exception("Unknown option: " + x + "\n" + usage)
+    case x :: xs => parseOptions(xs, o.copy(positional = o.positional :+ x))
+    case Nil => o
+  }
+  val opts = parseOptions(args.toList, Options())
+  if(opts.positional.length < 2 || opts.positional.length > 3) {
+    throw new Exception(usage)
+  }
+  val source = new File(opts.positional(0))
+  val outdir = new File(opts.positional(1))
+  val kinds = if(opts.positional.length == 3) opts.positional(2).split(",").toList else List("person", "organization", "location")
+  kinds.foreach{
+    case "person" | "organization" | "location" =>
+    case k => throw new Exception("Type can only be person, organization, or location: " + k)
+  }
+  if(!outdir.exists && !outdir.mkdirs) {
+    throw new IOException("Failed to create directory: " + outdir.getPath)
+  }
+
+  val docs = loadDocuments(source, opts.stax, opts.threads, opts.recursive)
+  val (train, test) = split(docs, opts.testPercent, opts.seed)
+  System.err.println("Documents: " + train.length + " training, " + test.length + " test")
+
+  val params = TrainingParameters.defaultParams()
+  params.put(TrainingParameters.ITERATIONS_PARAM, opts.iterations.toString)
+  params.put(TrainingParameters.CUTOFF_PARAM, opts.cutoff.toString)
+
+  val pool = Executors.newFixedThreadPool(kinds.length)
+  val jobs = kinds.map{k =>
+    pool.submit(new Callable[(String, TokenNameFinderModel)] {
+      def call(): (String, TokenNameFinderModel) = {
+        val model = NameFinderTraining.train(k, samples(train, k), params)
+        val out = new BufferedOutputStream(new FileOutputStream(new File(outdir, modelName(k))))
+        try {
+          model.serialize(out)
+        } finally {
+          out.close()
+        }
+        (k, model)
+      }
+    })
+  }
+  val models = try {
+    jobs.map{_.get()}
+  } catch {
+    case e: ExecutionException => throw e.getCause
+  } finally {
+    pool.shutdown()
+  }
+  if(!test.isEmpty) {
+    models.foreach{case (k, model) =>
+      System.err.println(k + ": " + evaluate(model, samples(test, k)))
+    }
+  }
+  System.exit(0)
+}
+// set tabstop=2
@@ -0,0 +1,194 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.File
+
+import opennlp.tools.namefind.NameSample
+import opennlp.tools.util.Span
+
+import AinmProcess.{EntityReference, ainmTextPieceToNER}
+
+/**
+ * A sentence of a paragraph: the tokens, as character offsets into the
+ * paragraph text, and the entities, as typed spans of token indices.
+ */
+case class ProjectedSentence(text: String, span: Span, tokenSpans: Array[Span], names: Array[Span]) {
+  lazy val tokens: Array[String] = tokenSpans.map{e => text.substring(e.getStart, e.getEnd)}
+  def namesFor(filter: String): Array[Span] = {
+    if(filter == "") names else names.filter{_.getType == filter}
+  }
+  def toNameSample(filter: String, clearAdaptiveData: Boolean = false): NameSample = {
+    new NameSample(tokens, namesFor(filter), clearAdaptiveData)
+  }
+}
+
+/**
+ * Tokenises each paragraph with a single call to the sentence detector and
+ * tokeniser, and projects the character spans of the entities onto the
+ * tokens, rather than tokenising each piece separately.
+ * Sentences are not split inside an entity, and tokens that cross the
+ * boundary of an entity or sentence are split at the boundary.
+ */
+object OffsetProjection {
+  /**
+   * The text of a paragraph, and the character spans of its entities,
+   * typed by NER type (see AinmProcess.ainmTextPieceToNER).
+   * Leading and trailing whitespace is not counted as part of an entity.
+   */
+  def entitySpans(p: Paragraph): (String, Array[Span]) = {
+    val sb = new StringBuilder
+    val spans = Array.newBuilder[Span]
+    p.children.foreach{c =>
+      spans ++= nerSpan(c, sb.length)
+      sb.append(c.getText)
+    }
+    (sb.toString, spans.result())
+  }
+  /**
+   * The span of a piece of text starting at offset, if it is an entity.
+   */
+  def nerSpan(c: TextPiece, offset: Int): Option[Span] = ainmTextPieceToNER(c) match {
+    case EntityReference(t, kind) => {
+      var start = 0
+      var end = t.length
+      while(start < end && Character.isWhitespace(t.charAt(start))) start += 1
+      while(end > start && Character.isWhitespace(t.charAt(end - 1))) end -= 1
+      if(start < end) Some(new Span(offset + start, offset + end, kind)) else None
+    }
+    case _ => None
+  }
+
+  /**
+   * Merges sentences which would split an entity.
+   * The sentences and the entities are in order, and do not overlap, so
+   * both are walked once.
+   */
+  def mergeSentences(sents: Array[Span], entities: Array[Span]): Array[Span] = {
+    val out = Array.newBuilder[Span]
+    var k = 0
+    // whether an entity crosses the offset; offsets must not decrease
+    def crosses(offset: Int): Boolean = {
+      while(k < entities.length && entities(k).getEnd <= offset) k += 1
+      k < entities.length && entities(k).getStart < offset
+    }
+    var i = 0
+    while(i < sents.length) {
+      var j = i
+      while(j + 1 < sents.length && crosses(sents(j).getEnd)) {
+        j += 1
+      }
+      out += new Span(sents(i).getStart, sents(j).getEnd)
+      i = j + 1
+    }
+    out.result()
+  }
+
+  /**
+   * Splits tokens which cross a boundary (of an entity or a sentence).
+   * The tokens and the boundaries are in order, so the two are merged in
+   * a single pass.
+   */
+  def splitTokens(tokens: Array[Span], boundaries: Array[Int]): Array[Span] = {
+    val out = Array.newBuilder[Span]
+    var b = 0
+    tokens.foreach{t =>
+      var start = t.getStart
+      while(b < boundaries.length && boundaries(b) <= start) b += 1
+      while(b < boundaries.length && boundaries(b) < t.getEnd) {
+        out += new Span(start, boundaries(b))
+        start = boundaries(b)
+        while(b < boundaries.length && boundaries(b) <= start) b += 1
+      }
+      out += new Span(start, t.getEnd)
+    }
+    out.result()
+  }
+
+  /**
+   * Maps the character spans of the entities within a sentence onto spans
+   * of token indices. The tokens and the entities are in order, so both
+   * are walked once.
+   */
+  def tokenSpans(tokens: Array[Span], entities: Array[Span]): Array[Span] = {
+    val out = Array.newBuilder[Span]
+    var first = 0
+    var next = 0
+    entities.foreach{e =>
+      while(first < tokens.length && tokens(first).getStart < e.getStart) first += 1
+      while(next < tokens.length && tokens(next).getEnd <= e.getEnd) next += 1
+      if(first < tokens.length && next > first) {
+        out += new Span(first, next, e.getType)
+      }
+    }
+    out.result()
+  }
+
+  def projectParagraph(p: Paragraph): List[ProjectedSentence] = {
+    val (text, entities) = entitySpans(p)
+    val sents = mergeSentences(AinmProcess.sentdetect.sentPosDetect(text), entities)
+    val boundaries = (entities.flatMap{e => Array(e.getStart, e.getEnd)} ++ sents.map{_.getStart}).sorted
+    val tokens = splitTokens(AinmProcess.tokdetect.tokenizePos(text), boundaries)
+    project(text, sents, tokens, entities)
+  }
+  /**
+   * Divides the tokens of a paragraph into its sentences, and maps the
+   * entities of each sentence onto its tokens. Sentences without tokens
+   * are dropped. The sentences, tokens and entities are in order, so each
+   * is walked once.
+   */
+  def project(text: String, sents: Array[Span], tokens: Array[Span], entities: Array[Span]): List[ProjectedSentence] = {
+    var t = 0
+    var e = 0
+    sents.toList.map{s =>
+      val first = t
+      while(t < tokens.length && tokens(t).getStart < s.getEnd) t += 1
+      val stoks = java.util.Arrays.copyOfRange(tokens, first, t)
+      while(e < entities.length && entities(e).getStart < s.getStart) e += 1
+      val firstEntity = e
+      while(e < entities.length && entities(e).getEnd <= s.getEnd) e += 1
+      val inside = java.util.Arrays.copyOfRange(entities, firstEntity, e)
+      ProjectedSentence(text, s, stoks, tokenSpans(stoks, inside))
+    }.filter{_.tokenSpans.length > 0}
+  }
+  def projectParagraphs(l: List[Paragraph]): List[ProjectedSentence] = l.flatMap{projectParagraph}
+
+  /**
+   * The NameSamples of a document, for a filter; adaptive data is cleared
+   * at the start of the document.
+   */
+  def nameSamples(l: List[ProjectedSentence], filter: String): List[NameSample] = {
+    l.zipWithIndex.map{case (s, i) => s.toNameSample(filter, i == 0)}
+  }
+
+  /**
+   * Equivalent to AinmProcess.processFileMulti, but with each paragraph
+   * tokenised as a whole, and written as NameSamples, a sentence per line.
+   */
+  def processFileMulti[A](f: A, filters: List[String], read: A => List[Paragraph]): List[String] = {
+    val sents = projectParagraphs(read(f))
+    filters.map{flt => sents.map{_.toNameSample(flt).toString.trim}.mkString("\n")}
+  }
+}
+// set tabstop=2
@@ -0,0 +1,220 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.{FilterOutputStream, OutputStream}
+import java.util.Locale
+import java.util.concurrent.atomic.LongAdder
+
+import scala.xml.XML
+
+import AinmProcess.{EntityReference, ainmTextPieceToNER}
+
+/**
+ * A stage of the pipeline: the time spent in it (summed over threads) and
+ * the number of times it was run, which are also recorded as Flight
+ * Recorder events.
+ */
+class Stage(val name: String) {
+  val nanos = new LongAdder
+  val calls = new LongAdder
+
+  /**
+   * Runs body, timing it; file is the path of the document it is run for,
+   * or null for a stage that is not run per document (close)
+   */
+  def time[A](file: String)(body: => A): A = {
+    val event = PipelineEvents.begin()
+    val start = System.nanoTime
+    try {
+      body
+    } finally {
+      nanos.add(System.nanoTime - start)
+      calls.increment()
+      PipelineEvents.stage(event, name, file)
+    }
+  }
+
+  def seconds: Double = nanos.sum / 1e9
+}
+
+/**
+ * Counts the bytes written through it.
+ */
+class CountingOutputStream(out: OutputStream, count: LongAdder) extends FilterOutputStream(out) {
+  override def write(b: Int) {
+    out.write(b)
+    count.increment()
+  }
+  override def write(b: Array[Byte], off: Int, len: Int) {
+    out.write(b, off, len)
+    count.add(len)
+  }
+}
+
+/**
+ * Counters and timers for a conversion run; these are cheap enough (a
+ * LongAdder per stage or file, not per token) to be always on.
+ */
+object PipelineMetrics {
+  // XML.load and TEIReader are timed separately; the StAX reader parses
+  // as it reads, so it is timed as one stage
+  val parse = new Stage("parse")
+  val extract = new Stage("extract")
+  val stream = new Stage("stream")
+  val convert = new Stage("convert")
+  val write = new Stage("write")
+  // flushing and closing the outputs, once per run
+  val close = new Stage("close")
+  val stages = List(parse, extract, stream, convert, write, close)
+
+  // paragraphs, entities and bytesRead are only counted for the files that
+  // are converted, not those read from a ConversionCache (cachedFiles)
+  val files = new LongAdder
+  val cachedFiles = new LongAdder
+  val paragraphs = new LongAdder
+  // summed over the output files, like bytesWritten
+  val tokensWritten = new LongAdder
+  val bytesRead = new LongAdder
+  val bytesWritten = new LongAdder
+  val entities: Map[String, LongAdder] = List("person", "organization", "location").map{e => (e, new LongAdder)}.toMap
+
+  private var started = System.nanoTime
+
+  def reset() {
+    (stages.flatMap{s => List(s.nanos, s.calls)} ++ List(files, cachedFiles, paragraphs, tokensWritten, bytesRead, bytesWritten) ++ entities.values).foreach{_.reset()}
+    started = System.nanoTime
+  }
+
+  /**
+   * Reads the paragraphs of a file, as AinmProcess.readDocument, timing
+   * the parse and extract (or stream) stages
+   */
+  def readDocument(f: CorpusDocument, stax: Boolean): List[Paragraph] = {
+    val in = f.open()
+    try {
+      if(stax) {
+        stream.time(f.path)(TEIStreamReader.readParagraphs(in))
+      } else {
+        val xml = parse.time(f.path)(XML.load(in))
+        extract.time(f.path)(TEIReader.readParagraphs(xml))
+      }
+    } finally {
+      in.close()
+    }
+  }
+
+  /**
+   * Reads and converts a file, counting its paragraphs, entities and
+   * tokens (as counted by countTokens in its outputs)
+   */
+  def convertFile[A](f: CorpusDocument, stax: Boolean)(process: List[Paragraph] => A)(countTokens: A => Int): A = {
+    val event = PipelineEvents.beginFile()
+    val paras = readDocument(f, stax)
+    var count = 0
+    paras.foreach{_.children.foreach{c =>
+      ainmTextPieceToNER(c) match {
+        case EntityReference(_, kind) => {
+          entities.get(kind).foreach{_.increment()}
+          count += 1
+        }
+        case _ =>
+      }
+    }}
+    val out = convert.time(f.path)(process(paras))
+    val size = f.size
+    paragraphs.add(paras.length)
+    bytesRead.add(size)
+    tokensWritten.add(countTokens(out))
+    PipelineEvents.file(event, f.path, paras.length, count, size)
+    out
+  }
+
+  /**
+   * Counts a file whose outputs were read from a ConversionCache, rather
+   * than converted: only its tokens, as the paragraphs are not read
+   */
+  def cachedFile[A](out: A)(countTokens: A => Int): A = {
+    cachedFiles.increment()
+    tokensWritten.add(countTokens(out))
+    out
+  }
+
+  /** The tokens in the outputs of a file, one per filter */
+  def countOutputTokens(docs: List[String]): Int = docs.map{countTokens}.sum
+
+  /**
+   * Counts the tokens in converted text: whitespace-separated, not
+   * counting <START:type> and <END>
+   */
+  def countTokens(doc: String): Int = {
+    var count = 0
+    var i = 0
+    while(i < doc.length) {
+      while(i < doc.length && Character.isWhitespace(doc.charAt(i))) i += 1
+      if(i < doc.length) {
+        val start = i
+        while(i < doc.length && !Character.isWhitespace(doc.charAt(i))) i += 1
+        if(!(doc.startsWith("<START:", start) || doc.startsWith("<END>", start))) {
+          count += 1
+        }
+      }
+    }
+    count
+  }
+
+  def countingStream(out: OutputStream): OutputStream = new CountingOutputStream(out, bytesWritten)
+
+  private def rate(n: Long, secs: Double): String = if(secs > 0) "%.1f".formatLocal(Locale.ROOT, n / secs) else "0"
+
+  /**
+   * The metrics, as JSON; stage times are summed over threads, so they
+   * can be more than the elapsed time.
+   */
+  def toJSON: String = {
+    val elapsed = (System.nanoTime - started) / 1e9
+    val sb = new StringBuilder
+    sb.append("{\n")
+    sb.append("  \"elapsedSeconds\": " + "%.3f".formatLocal(Locale.ROOT, elapsed) + ",\n")
+    sb.append("  \"files\": " + files.sum + ",\n")
+    sb.append("  \"cachedFiles\": " + cachedFiles.sum + ",\n")
+    sb.append("  \"paragraphs\": " + paragraphs.sum + ",\n")
+    sb.append("  \"tokensWritten\": " + tokensWritten.sum + ",\n")
+    sb.append("  \"bytesRead\": " + bytesRead.sum + ",\n")
+    sb.append("  \"bytesWritten\": " + bytesWritten.sum + ",\n")
+    sb.append("  \"filesPerSecond\": " + rate(files.sum, elapsed) + ",\n")
+    sb.append("  \"paragraphsPerSecond\": " + rate(paragraphs.sum, elapsed) + ",\n")
+    sb.append("  \"tokensWrittenPerSecond\": " + rate(tokensWritten.sum, elapsed) + ",\n")
+    sb.append("  \"entities\": {")
+    sb.append(entities.toList.sortBy{_._1}.map{case (k, v) => "\"" + k + "\": " + v.sum}.mkString(", "))
+    sb.append("},\n")
+    sb.append("  \"stages\": {\n")
+    sb.append(stages.map{s =>
+      "    \"" + s.name + "\": {\"calls\": " + s.calls.sum + ", \"seconds\": " + "%.3f".formatLocal(Locale.ROOT, s.seconds) + "}"
+    }.mkString(",\n"))
+    sb.append("\n  }\n}\n")
+    sb.toString
+  }
+}
+// set tabstop=2
@@ -0,0 +1,272 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.{File, FileInputStream, InputStream, BufferedInputStream}
+import javax.xml.stream.{XMLEventReader, XMLInputFactory}
+import javax.xml.stream.events.{StartElement, XMLEvent}
+import javax.xml.namespace.QName
+
+/**
+ * Reads the paragraphs of an ainm.ie TEI document with StAX, without
+ * building a tree of the whole document first.
+ * The output is intended to be identical to that of
+ * TEIReader.readParagraphs, so the two can be compared.
+ * Elements embedded in <persName> are repaired as the document is read
+ * (see EmbeddedElementRepair).
+ */
+object TEIStreamReader {
+  lazy val factory: XMLInputFactory = {
+    val f = XMLInputFactory.newInstance()
+    f.setProperty(XMLInputFactory.IS_COALESCING, true)
+    f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false)
+    f
+  }
+
+  def readFile(f: File): List[Paragraph] = {
+    val in = new BufferedInputStream(new FileInputStream(f))
+    try {
+      readParagraphs(in)
+    } finally {
+      in.close()
+    }
+  }
+
+  def createReader(in: InputStream): XMLEventReader = {
+    new EmbeddedElementRepair(factory.createXMLEventReader(in))
+  }
+
+  def readParagraphs(in: InputStream): List[Paragraph] = {
+    val reader = createReader(in)
+    try {
+      paragraphs(reader).toList
+    } finally {
+      reader.close()
+    }
+  }
+
+  def readHeaderFile(f: File): TEIHeader = {
+    val in = new BufferedInputStream(new FileInputStream(f))
+    try {
+      readHeader(in)
+    } finally {
+      in.close()
+    }
+  }
+  def readHeader(in: InputStream): TEIHeader = {
+    val reader = factory.createXMLEventReader(in)
+    try {
+      readHeader(reader)
+    } finally {
+      reader.close()
+    }
+  }
+
+  /**
+   * Reads the header in a single pass, as TEIReader.readHeader does, but
+   * stops at the end of the header of the (first) biography, without
+   * reading the rest of the document.
+   */
+  def readHeader(in: XMLEventReader): TEIHeader = {
+    val header = new HeaderBuilder
+    var path = List.empty[String]
+    var done = false
+    while(!done && in.hasNext) {
+      val ev = in.nextEvent()
+      if(ev.isStartElement) {
+        val e = ev.asStartElement
+        val name = localName(e)
+        path match {
+          case "titleStmt" :: "fileDesc" :: "header" :: "biography" :: _ => readHeaderField(e, in, header)
+          case _ => {
+            if(name == "biography") {
+              header.id.append(attr(e, "id"))
+            }
+            path = name :: path
+          }
+        }
+      } else if(ev.isEndElement) {
+        path match {
+          case "header" :: "biography" :: _ => done = true
+          case _ =>
+        }
+        path = path.drop(1)
+      }
+    }
+    header.result
+  }
+
+  /**
+   * Reads a child of <titleStmt>: its text, and the text of its children.
+   */
+  private def readHeaderField(e: StartElement, in: XMLEventReader, header: HeaderBuilder) {
+    val text = new StringBuilder
+    val children = scala.collection.mutable.Map.empty[String, StringBuilder]
+    var current: StringBuilder = null
+    var depth = 0
+    while(depth >= 0) {
+      val ev = in.nextEvent()
+      if(ev.isCharacters) {
+        text.append(ev.asCharacters.getData)
+        if(current != null) {
+          current.append(ev.asCharacters.getData)
+        }
+      } else if(ev.isStartElement) {
+        if(depth == 0) {
+          current = children.getOrElseUpdate(localName(ev.asStartElement), new StringBuilder)
+        }
+        depth += 1
+      } else if(ev.isEndElement) {
+        depth -= 1
+        if(depth == 0) {
+          current = null
+        }
+      }
+    }
+    header.add(localName(e), text.toString, {k => attr(e, k)}, {k => children.get(k).map{_.toString}.getOrElse("")})
+  }
+
+  /**
+   * Lazily emits each paragraph as its closing tag is reached.
+   * Paragraphs are found at any depth, as with `\\ "p"`.
+   */
+  def paragraphs(in: XMLEventReader): Iterator[Paragraph] = new Iterator[Paragraph] {
+    private var pending: Paragraph = null
+    def hasNext: Boolean = {
+      if(pending == null) {
+        pending = advance()
+      }
+      pending != null
+    }
+    def next(): Paragraph = {
+      if(!hasNext) {
+        throw new NoSuchElementException("No more paragraphs")
+      }
+      val p = pending
+      pending = null
+      p
+    }
+    private def advance(): Paragraph = {
+      while(in.hasNext) {
+        val ev = in.nextEvent()
+        if(ev.isStartElement && localName(ev.asStartElement) == "p") {
+          return readParagraph(in)
+        }
+      }
+      null
+    }
+  }
+
+  private def localName(e: StartElement): String = e.getName.getLocalPart
+
+  def attr(e: StartElement, key: String): String = {
+    val a = e.getAttributeByName(new QName(key))
+    if(a == null) "" else a.getValue
+  }
+
+  /**
+   * Reads the pieces of a paragraph, the opening tag of which has just been
+   * consumed. Text is accumulated until the next tag, so that comments do
+   * not split text nodes, as with scala.xml.
+   */
+  def readParagraph(in: XMLEventReader): Paragraph = {
+    val pieces = List.newBuilder[TextPiece]
+    val text = new StringBuilder
+    def flush() {
+      if(text.length > 0) {
+        pieces += RawText(text.toString)
+        text.setLength(0)
+      }
+    }
+    var done = false
+    while(!done) {
+      val ev = in.nextEvent()
+      if(ev.isCharacters) {
+        text.append(ev.asCharacters.getData)
+      } else if(ev.isStartElement) {
+        flush()
+        pieces += readParagraphPiece(ev.asStartElement, in)
+      } else if(ev.isEndElement) {
+        flush()
+        done = true
+      } else if(ev.isProcessingInstruction) {
+        throw new Exception("Unexpected element" + ev.toString)
+      }
+    }
+    Paragraph(pieces.result())
+  }
+
+  /**
+   * Reads the remainder of an element, returning its text content and the
+   * number of child nodes: the DOM reader's patterns only match elements
+   * with a single child, so the same check is made here.
+   */
+  private def readContent(in: XMLEventReader): (String, Int) = {
+    val sb = new StringBuilder
+    var depth = 0
+    var children = 0
+    var intext = false
+    while(depth >= 0) {
+      val ev = in.nextEvent()
+      if(ev.isCharacters) {
+        sb.append(ev.asCharacters.getData)
+        if(depth == 0 && !intext) {
+          children += 1
+          intext = true
+        }
+      } else if(ev.isStartElement) {
+        if(depth == 0) {
+          children += 1
+          intext = false
+        }
+        depth += 1
+      } else if(ev.isEndElement) {
+        depth -= 1
+        intext = false
+      }
+    }
+    (sb.toString, children)
+  }
+
+  def readParagraphPiece(e: StartElement, in: XMLEventReader): TextPiece = {
+    def single(): String = readContent(in) match {
+      case (t, 1) => t
+      case _ => throw new Exception("Unexpected element" + e.toString)
+    }
+    localName(e) match {
+      case "em" => RawText(single())
+      case "blockquote" => RawText(single())
+      case "hide" => single(); RawText("")
+      case "a" => Anchor(single(), attr(e, "href"))
+      case "persName" => PersonMention(attr(e, "id"), attr(e, "baseform"), single())
+      case "placeName" => PlaceName(attr(e, "id"), attr(e, "baseform"), single(), attr(e, "geonames"), attr(e, "type") == "foreign")
+      case "party" => Party(attr(e, "baseform"), single())
+      case "opus" => Opus(attr(e, "type"), attr(e, "baseform"), single())
+      case "conradh" => Opus(attr(e, "type"), attr(e, "baseform"), single())
+      case "eduInst" => EduInst(attr(e, "baseform"), single(), attr(e, "geonames"))
+      case _ => throw new Exception("Unexpected element" + e.toString)
+    }
+  }
+}
+// set tabstop=2
@@ -29,9 +29,12 @@ import ie.tcd.slscs.itut.gramadanj.Utils;
 import org.junit.Test;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static junit.framework.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
@@ -122,6 +125,47 @@ public class FileUtilsTest extends TestCase {
         assertArrayEquals(names, exp);
     }
 
+    private static String[] names(Stream<Path> paths) {
+        try {
+            List<String> l = paths.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+            return l.toArray(new String[l.size()]);
+        } finally {
+            paths.close();
+        }
+    }
+    public void testFindStartsAndEndsWith() throws Exception {
+        String[] exp = new String[]{
+        "test1.txt"
+        };
+        assertArrayEquals(names(FileUtils.findStartsAndEndsWith(tmpdir, "test", ".txt", false)), exp);
+    }
+    public void testFindGlob() throws Exception {
+        String[] exp = new String[]{
+        "test1.txt", "text1.txt"
+        };
+        assertArrayEquals(names(FileUtils.findGlob(tmpdir, "te?t1.*", false)), exp);
+    }
+    public void testFindRecursive() throws Exception {
+        File sub = new File(tmpdir + File.separator + "sub");
+        File f = new File(sub, "test3.txt");
+        try {
+            if(!sub.mkdir() || !f.createNewFile()) {
+                throw new Exception("Failed to create file: " + f.getPath());
+            }
+            String[] flat = new String[]{
+            "test1.txt", "text1.txt"
+            };
+            String[] deep = new String[]{
+            "test1.txt", "test3.txt", "text1.txt"
+            };
+            assertArrayEquals(names(FileUtils.findGlob(tmpdir, "*.txt", false)), flat);
+            assertArrayEquals(names(FileUtils.findGlob(tmpdir, "*.txt", true)), deep);
+        } finally {
+            f.delete();
+            sub.delete();
+        }
+    }
+
     @Override
     protected void tearDown() throws Exception {
         File dir = new File(tmpdir);
@@ -0,0 +1,158 @@
+package ie.tcd.slscs.itut.gramadanj;
+/*
+ * Copyright © 2016 Trinity College, Dublin
+ * Irish Speech and Language Technology Research Centre
+ * Cóipcheart © 2016 Coláiste na Tríonóide, Baile Átha Cliath
+ * An tIonad taighde do Theicneolaíocht Urlabhra agus Teangeolaíochta na Gaeilge
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+
+public class MappedLexiconTest extends TestCase {
+    static final String tsvfile;
+    static {
+        String systmp = System.getProperty("java.io.tmpdir");
+        if(systmp.endsWith(File.separator)) {
+            tsvfile = systmp + "mappedlexicontest.tsv";
+        } else {
+            tsvfile = systmp + File.separator + "mappedlexicontest.tsv";
+        }
+    }
+    static final String content = "Seán\tSeán Ó Ríordáin\n"
+        + "Baile Átha Cliath\tBaile Átha Cliath\n"
+        + "bean\tmná\r\n"
+        + "Seán\tSeán Ó Riada\n"
+        + "fear\tfir";
+
+    private void write(String s) throws Exception {
+        Writer w = new OutputStreamWriter(new FileOutputStream(tsvfile), "UTF-8");
+        w.write(s);
+        w.close();
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        write(content);
+    }
+
+    public void testGet() throws Exception {
+        MappedLexicon lex = MappedLexicon.open(new File(tsvfile));
+        assertEquals(4, lex.size());
+        assertEquals("Seán Ó Riada", lex.get("Seán"));
+        assertEquals("Baile Átha Cliath", lex.get("Baile Átha Cliath"));
+        assertEquals("mná", lex.get("bean"));
+        assertEquals("fir", lex.get("fear"));
+        assertEquals(null, lex.get("Baile"));
+        assertEquals(false, lex.containsKey("fea"));
+    }
+
+    public void testSameAsReadTSV() throws Exception {
+        Map<String, String> map = Utils.readTSV(new File(tsvfile));
+        MappedLexicon lex = MappedLexicon.open(new File(tsvfile));
+        assertEquals(map.size(), lex.size());
+        for(Map.Entry<String, String> e : map.entrySet()) {
+            assertEquals(e.getValue(), lex.get(e.getKey()));
+        }
+    }
+
+    public void testIndexReused() throws Exception {
+        File idx = MappedLexicon.indexFile(new File(tsvfile));
+        MappedLexicon.open(new File(tsvfile));
+        assertEquals(true, idx.exists());
+        long built = idx.lastModified();
+        MappedLexicon lex = MappedLexicon.open(new File(tsvfile));
+        assertEquals(built, idx.lastModified());
+        assertEquals("fir", lex.get("fear"));
+    }
+
+    public void testMalformed() throws Exception {
+        write("a\tb\nc\n");
+        try {
+            MappedLexicon.open(new File(tsvfile));
+            fail("Expected an exception");
+        } catch (IOException e) {
+            assertEquals("Error reading file at line: 2", e.getMessage());
+        }
+    }
+
+    private void assertSameAsReadTSV(String s) throws Exception {
+        write(s);
+        MappedLexicon.indexFile(new File(tsvfile)).delete();
+        Map<String, String> map = Utils.readTSV(new File(tsvfile));
+        MappedLexicon lex = MappedLexicon.open(new File(tsvfile));
+        assertEquals(map.size(), lex.size());
+        for(Map.Entry<String, String> e : map.entrySet()) {
+            assertEquals(e.getValue(), lex.get(e.getKey()));
+        }
+    }
+    private void assertBothReject(String s, String message) throws Exception {
+        write(s);
+        MappedLexicon.indexFile(new File(tsvfile)).delete();
+        try {
+            Utils.readTSV(new File(tsvfile));
+            fail("Expected an exception from readTSV");
+        } catch (IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+        try {
+            MappedLexicon.open(new File(tsvfile));
+            fail("Expected an exception");
+        } catch (IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    public void testTrailingTab() throws Exception {
+        assertSameAsReadTSV("a\tb\t\nc\td\t\t\r\n\te\n");
+        MappedLexicon lex = MappedLexicon.open(new File(tsvfile));
+        assertEquals("b", lex.get("a"));
+        assertEquals("d", lex.get("c"));
+        assertEquals("e", lex.get(""));
+        assertBothReject("a\tb\nc\t\n", "Error reading file at line: 2");
+        assertBothReject("a\tb\nc\t\td\n", "Error reading file at line: 2");
+    }
+
+    public void testLoneCarriageReturn() throws Exception {
+        assertSameAsReadTSV("a\tb\rc\td\r\ne\tf");
+        assertEquals(3, MappedLexicon.open(new File(tsvfile)).size());
+        assertSameAsReadTSV("a\tb\rc\td\r");
+        MappedLexicon lex = MappedLexicon.open(new File(tsvfile));
+        assertEquals("b", lex.get("a"));
+        assertEquals("d", lex.get("c"));
+        // the empty line between \r and \r is an error for both
+        assertBothReject("a\tb\r\rc\td", "Error reading file at line: 2");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new File(tsvfile).delete();
+        MappedLexicon.indexFile(new File(tsvfile)).delete();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+object AinmProcessTest {
+  import AinmProcess._
+
+  /** simplifyTextPieces before it was made linear */
+  def oldSimplifyTextPieces(pieces: List[NERText]): List[NERText] = {
+    def simplifyInner(pieces: List[NERText], acc: List[NERText]): List[NERText] = pieces match {
+      case EntityReference(a, b) :: xs => simplifyInner(xs, acc :+ EntityReference(a,b))
+      case TextPart(t) :: xs => xs match {
+        case Nil => acc :+ TextPart(t)
+        case TextPart(tt) :: xx => simplifyInner(xx :+ TextPart(t + tt), acc)
+        case EntityReference(a, b) :: xx => simplifyInner(xx, acc ++ List(TextPart(t), EntityReference(a, b)))
+      }
+      case Nil => acc
+      case _ => throw new Exception("Unexpected object: " + pieces.toString)
+    }
+    simplifyInner(pieces, List.empty[NERText])
+  }
+
+  /**
+   * The old version re-queued merged text at the end of the list, so it
+   * only kept the order of the pieces if no more than one piece of text
+   * was adjacent to another, and then only at the end of the list.
+   */
+  def oldKeepsOrder(pieces: List[NERText]): Boolean = {
+    val runs = pieces.foldLeft(List(0)){
+      case (n :: ns, TextPart(_)) => (n + 1) :: ns
+      case (ns, _) => 0 :: ns
+    }
+    runs.tail.forall{_ <= 1} && runs.head <= 2
+  }
+
+  /** All sequences of up to n of the given pieces */
+  def sequences[A](alphabet: List[A], n: Int): List[List[A]] = {
+    if(n == 0) List(Nil) else List(Nil) ++ alphabet.flatMap{a => sequences(alphabet, n - 1).map{a :: _}}.distinct
+  }
+
+  // hide is read as empty text
+  val nerAlphabet: List[NERText] = List(TextPart("a"), TextPart(""), TextPart("b "), EntityReference("X", "person"), EntityReference("Y Z", "location"))
+  val pieceAlphabet: List[TextPiece] = List(RawText("a "), RawText(""), Anchor("nasc", ""), Opus("book", "", "Leabhar"),
+    PersonMention("1", "", "Seán"), PlaceName("2", "", "Corcaigh", "", false), Opus("newspaper", "", "An Nation"), Party("", "Fine Gael"))
+}
+
+class AinmProcessTest extends TestCase {
+  import AinmProcessTest._
+  import AinmProcess._
+  import TestFixtures._
+
+  def testSimplifyTextPiecesAgainstOld() {
+    val all = sequences(nerAlphabet, 5)
+    assertEquals(3906, all.length)
+    all.foreach{l =>
+      val simplified = simplifyTextPieces(l)
+      // the text, and the entities, are kept, in order
+      assertEquals(piecesToString(l), piecesToString(simplified))
+      assertEquals(l.filter{_.isInstanceOf[EntityReference]}, simplified.filter{_.isInstanceOf[EntityReference]})
+      // adjacent text is merged
+      simplified.sliding(2).foreach{
+        case List(TextPart(_), TextPart(_)) => fail("Unmerged text in " + simplified)
+        case _ =>
+      }
+      if(oldKeepsOrder(l)) {
+        assertEquals(l.toString, oldSimplifyTextPieces(l), simplified)
+      }
+    }
+  }
+
+  def testOldSimplifyTextPiecesReordered() {
+    val l = List(TextPart("a"), TextPart(""), EntityReference("X", "person"), TextPart("b"))
+    assertEquals(List(EntityReference("X", "person"), TextPart("ba")), oldSimplifyTextPieces(l))
+    assertEquals(List(TextPart("a"), EntityReference("X", "person"), TextPart("b")), simplifyTextPieces(l))
+  }
+
+  def testSimplifyParagraphAgainstOld() {
+    sequences(pieceAlphabet, 4).foreach{l =>
+      val p = Paragraph(l)
+      filters.foreach{f =>
+        val pieces = filterNERParagraph(p, f)
+        assertEquals(simplifyTextPieces(pieces), simplifyParagraph(p, f))
+        if(oldKeepsOrder(pieces)) {
+          assertEquals(oldSimplifyTextPieces(pieces), simplifyParagraph(p, f))
+        }
+      }
+    }
+    paragraphs.foreach{p =>
+      filters.foreach{f => assertEquals(simplifyTextPieces(filterNERParagraph(p, f)), simplifyParagraph(p, f))}
+    }
+  }
+
+  def testProcessParagraphMulti() {
+    assertEquals(12, paragraphs.length)
+    paragraphs.foreach{p =>
+      assertEquals(filters.map{f => processParagraph(p, f)}, processParagraphMulti(p, filters))
+    }
+  }
+
+  def testProcessParagraphMultiOrderAndRepeats() {
+    val fs = List("location", "", "location", "person")
+    paragraphs.foreach{p =>
+      assertEquals(fs.map{f => processParagraph(p, f)}, processParagraphMulti(p, fs))
+    }
+  }
+
+  def testProcessFileMulti() {
+    val multi = processFileMulti[List[Paragraph]](paragraphs, filters, {l => l})
+    assertEquals(filters.map{f => processParagraphs(paragraphs, f).mkString("\n")}, multi)
+  }
+
+  def testFindFilesAfterTheEnd() {
+    val dir = java.nio.file.Files.createTempDirectory("findfilestest").toFile
+    val sub = new java.io.File(dir, "www.ainm.ie")
+    sub.mkdir()
+    val files = List(new java.io.File(dir, "Bio.aspx?ID=1&xml=true"), new java.io.File(sub, "Bio.aspx?ID=2&xml=true"))
+    try {
+      files.foreach{f => java.nio.file.Files.write(f.toPath, bytes)}
+      List(false, true).foreach{recursive =>
+        val it = findFiles(dir.getPath, recursive)
+        val found = it.toList
+        assertEquals(if(recursive) 2 else 1, found.length)
+        assertFalse(it.hasNext)
+        assertFalse(it.hasNext)
+        // as orderedMap asks for more after the end
+        assertEquals(found.map{_.getName}, orderedMap(CorpusDocument.documents(dir, recursive), 2){_.name}.toList)
+      }
+    } finally {
+      files.foreach{_.delete()}
+      sub.delete()
+      dir.delete()
+    }
+  }
+
+  /** The threads of pools (other than the common pool) still running */
+  private def poolThreads: Int = {
+    import scala.collection.JavaConverters._
+    Thread.getAllStackTraces.keySet.asScala.count{t => t.getName.startsWith("ForkJoinPool-") && t.isAlive}
+  }
+  private def waitForPoolThreads(n: Int): Int = {
+    val until = System.currentTimeMillis + 10000
+    while(poolThreads > n && System.currentTimeMillis < until) {
+      Thread.sleep(10)
+    }
+    poolThreads
+  }
+
+  def testOrderedMapShutsDownItsPool() {
+    val before = waitForPoolThreads(0)
+    assertEquals((1 to 200).map{_ * 2}.toList, orderedMap((1 to 200).iterator, 4){i => i * 2}.toList)
+    assertEquals(before, waitForPoolThreads(before))
+    try {
+      orderedMap((1 to 200).iterator, 4){i => if(i == 50) throw new IllegalStateException("" + i) else i}.toList
+      fail("Expected an exception")
+    } catch {
+      // the pool may rethrow a copy, with the original as its cause
+      case e: IllegalStateException => assertTrue(e.getMessage.endsWith("50"))
+    }
+    assertEquals(before, waitForPoolThreads(before))
+  }
+}
+// set tabstop=2
@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.File
+import java.nio.file.Files
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+class BinaryCorpusTest extends TestCase {
+  import TestFixtures._
+
+  var dir: File = null
+
+  override def setUp() {
+    dir = Files.createTempDirectory("binarycorpustest").toFile
+    Files.write(new File(dir, "Bio.aspx?ID=0&xml=true").toPath, bytes)
+    val other = document(7, List(
+      "Rugadh <persName id=\"9\" baseform=\"Nóra\">Nóra</persName> i <placeName id=\"p1\" baseform=\"Gaillimh\" geonames=\"2964180\">nGaillimh</placeName> .",
+      "",
+      "<a href=\"Bio.aspx?ID=1\">Féach</a> <em>freisin</em> <eduInst baseform=\"Ollscoil\" geonames=\"1\">Ollscoil</eduInst>"))
+    Files.write(new File(dir, "Bio.aspx?ID=7&xml=true").toPath, other.getBytes("UTF-8"))
+  }
+
+  override def tearDown() {
+    dir.listFiles.foreach{_.delete()}
+    dir.delete()
+  }
+
+  private def build(stax: Boolean): BinaryCorpusReader = {
+    val out = new File(dir, "corpus.bin")
+    BinaryCorpus.build(CorpusDocument.documents(dir), out, 2, stax)
+    new BinaryCorpusReader(out)
+  }
+
+  private def sources: List[(String, List[Paragraph])] = {
+    CorpusDocument.documents(dir).toList.map{d => (AinmProcess.documentId(d.name), AinmProcess.readDocument(d, false))}
+  }
+
+  def testRoundTrip() {
+    val corpus = build(false)
+    val expected = sources
+    assertEquals(expected.map{_._1}, corpus.ids.toList)
+    assertEquals(2, corpus.size)
+    corpus.documents.toList.zip(expected).foreach{case (d, (id, paras)) =>
+      assertEquals(id, d.id)
+      assertEquals(paras.length, d.paragraphCount)
+      d.paragraphs.toList.zip(paras).foreach{case (b, p) =>
+        val decoded = b.toParagraph
+        assertEquals(p.getText, b.text)
+        assertEquals(p.getText, decoded.getText)
+        // links and emphasis are read back as text
+        assertEquals(p.children.filter{_.isInstanceOf[Mention]}, decoded.children.filter{_.isInstanceOf[Mention]})
+        filters.foreach{f => assertEquals(AinmProcess.simplifyParagraph(p, f), AinmProcess.simplifyParagraph(decoded, f))}
+        def summary(l: List[ProjectedSentence]) = l.map{s => (s.span, s.tokenSpans.toList, s.names.toList)}
+        assertEquals(summary(OffsetProjection.projectParagraph(p)), summary(b.projected))
+      }
+    }
+  }
+
+  def testExportMatchesDirectConversion() {
+    val corpus = build(true)
+    sources.foreach{case (id, paras) =>
+      val direct = OffsetProjection.processFileMulti[List[Paragraph]](paras, filters, {l => l})
+      assertEquals(direct, BinaryCorpus.exportDocument(corpus.document(id).get, filters))
+    }
+    assertEquals(None, corpus.document("missing"))
+  }
+
+  def testArchiveInput() {
+    val zip = new File(dir, "corpus.zip")
+    val out = new java.util.zip.ZipOutputStream(new java.io.FileOutputStream(zip))
+    try {
+      // in the order in which the directory is read
+      AinmProcess.findFiles(dir.getPath, false).foreach{f =>
+        out.putNextEntry(new java.util.zip.ZipEntry("www.ainm.ie/" + f.getName))
+        out.write(Files.readAllBytes(f.toPath))
+        out.closeEntry()
+      }
+    } finally {
+      out.close()
+    }
+    val fromDir = new File(dir, "dir.bin")
+    val fromZip = new File(dir, "zip.bin")
+    BinaryCorpus.build(CorpusDocument.documents(dir), fromDir, 1, false)
+    BinaryCorpus.build(CorpusDocument.documents(zip), fromZip, 1, false)
+    assertTrue(java.util.Arrays.equals(Files.readAllBytes(fromDir.toPath), Files.readAllBytes(fromZip.toPath)))
+  }
+}
+// set tabstop=2
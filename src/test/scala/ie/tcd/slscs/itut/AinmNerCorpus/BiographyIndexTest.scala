@@ -0,0 +1,177 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.File
+import java.nio.file.Files
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+class BiographyIndexTest extends TestCase {
+  import TestFixtures._
+
+  var dir: File = null
+
+  /** A biography with the given header fields, and a paragraph */
+  private def biography(id: Int, birth: String, death: String, sex: String, faith: String,
+                        birthplace: String, geonames: String, occupations: List[String]): String = {
+    "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<biography id=\"" + id + "\"><header><fileDesc><titleStmt>" +
+    "<title>Doc " + id + "</title><persName><forename>F" + id + "</forename><surname>S" + id + "</surname></persName>" +
+    "<birth date=\"" + birth + "\">" + birth + "</birth><death date=\"" + death + "\">" + death + "</death>" +
+    "<sex>" + sex + "</sex><faith>" + faith + "</faith>" +
+    occupations.map{o => "<occupation>" + o + "</occupation>"}.mkString +
+    "<birthPlace id=\"b" + id + "\" geonames=\"" + geonames + "\">" + birthplace + "</birthPlace>" +
+    "</titleStmt></fileDesc></header><text><p>Téacs .</p></text></biography>"
+  }
+
+  val biographies = List(
+    biography(1, "1798-12-24", "1855", "m", "Caitliceach", "Co. na Gaillimhe", "2964179", List("file")),
+    biography(2, "1901", "1970-01-01", "f", "Protastúnach", "Co. na Gaillimhe", "2964179", List("múinteoir", "file")),
+    biography(3, "1850", "", "m", "Protastúnach", "Co. Chorcaí", "2965139", Nil),
+    biography(4, "c. 1899", "1950", "f", "Caitliceach", "Gaillimh", "2964180", List("polaiteoir")),
+    // malformed dates: unknown years, rather than a failed build
+    biography(5, "yyyy-mm-dd", "17981224", "m", "", "", "", Nil),
+    biography(6, "12.5.1880", "", "f", "Caitliceach", "Co. na Gaillimhe", "2964179", Nil)
+  )
+
+  override def setUp() {
+    dir = Files.createTempDirectory("biographyindextest").toFile
+    val sub = new File(dir, "sub")
+    sub.mkdir()
+    biographies.zipWithIndex.foreach{case (b, i) =>
+      // the last two are in a subdirectory, for --recursive
+      val d = if(i >= 4) sub else dir
+      Files.write(new File(d, "Bio.aspx?ID=" + (i + 1) + "&xml=true").toPath, b.getBytes("UTF-8"))
+    }
+  }
+
+  override def tearDown() {
+    def delete(f: File) {
+      if(f.isDirectory) f.listFiles.foreach{delete}
+      f.delete()
+    }
+    delete(dir)
+  }
+
+  private def build(docs: Iterator[CorpusDocument], name: String): BiographyIndex = {
+    val out = new File(dir, name)
+    BiographyIndex.build(docs, out, 2)
+    new BiographyIndex(out)
+  }
+
+  private def headers: List[(String, TEIHeader)] =
+    CorpusDocument.documents(dir, true).toList.map{d => (d.name, BiographyIndex.readHeader(d))}
+
+  def testRoundTrip() {
+    val index = build(CorpusDocument.documents(dir, true), "index.bin")
+    val expected = headers
+    assertEquals(6, index.size)
+    expected.zipWithIndex.foreach{case ((name, h), row) =>
+      assertEquals(name, index.text("file", row))
+      BiographyIndex.textColumns.foreach{case (c, get) => assertEquals(c, get(h), index.text(c, row))}
+      BiographyIndex.listColumns.foreach{case (c, get) => assertEquals(c, get(h), index.list(c, row))}
+      BiographyIndex.yearColumns.foreach{case (c, get) => assertEquals(c, BiographyIndex.year(get(h)).getOrElse(-1), index.year(c, row))}
+    }
+    // the rows are in the order the directory is read
+    def years(column: String) = (0 until 6).toList.map{r => (index.text("id", r), index.year(column, r))}.sorted.map{_._2}
+    assertEquals(List(1798, 1901, 1850, 1899, -1, 1880), years("birthyear"))
+    assertEquals(List(1855, 1970, -1, 1950, -1, -1), years("deathyear"))
+  }
+
+  def testYear() {
+    assertEquals(Some(1798), BiographyIndex.year("1798-12-24"))
+    assertEquals(Some(1798), BiographyIndex.year("c. 1798"))
+    assertEquals(Some(1880), BiographyIndex.year("12.5.1880"))
+    assertEquals(None, BiographyIndex.year("17981224"))
+    assertEquals(None, BiographyIndex.year("yyyy-mm-dd"))
+    assertEquals(None, BiographyIndex.year(""))
+  }
+
+  private def select(index: BiographyIndex, args: String*): List[String] = {
+    val (conditions, column) = BiographyIndex.conditions(index, args.toList)
+    index.select{row => conditions.forall{c => c(row)}}.toList.map{index.text(column, _)}.sorted
+  }
+
+  def testConditions() {
+    val index = build(CorpusDocument.documents(dir, true), "index.bin")
+    // born in Co. Galway before 1900
+    assertEquals(List("1", "6"), select(index, "--birthplace", "co. na gaillimhe", "--born-before", "1900", "--ids"))
+    assertEquals(List("1", "6"), select(index, "--geonames", "2964179", "--born-before", "1900", "--ids"))
+    assertEquals(List("2"), select(index, "--geonames", "2964179", "--born-after", "1899", "--ids"))
+    assertEquals(List("2", "4"), select(index, "--died-after", "1900", "--ids"))
+    assertEquals(List("1"), select(index, "--died-before", "1900", "--ids"))
+    assertEquals(List("2", "4", "6"), select(index, "--sex", "f", "--ids"))
+    assertEquals(List("2", "3"), select(index, "--faith", "Protastúnach", "--ids"))
+    assertEquals(List("1", "2"), select(index, "--occupation", "FILE", "--ids"))
+    assertEquals(List("Bio.aspx?ID=4&xml=true", "Bio.aspx?ID=6&xml=true"), select(index, "--sex", "f", "--faith", "Caitliceach"))
+    // the same as filtering the headers directly
+    val born = headers.filter{case (_, h) =>
+      h.birthplace.text.toLowerCase.contains("gaillimh") && BiographyIndex.year(h.birth.date).exists{_ < 1900}
+    }.map{_._2.id}.sorted
+    assertEquals(born, select(index, "--birthplace", "Gaillimh", "--born-before", "1900", "--ids"))
+  }
+
+  def testBadConditions() {
+    val index = build(CorpusDocument.documents(dir, true), "index.bin")
+    List(List("--born-before", "1900x"), List("--died-after", "-1"), List("--colour", "dearg")).foreach{l =>
+      try {
+        BiographyIndex.conditions(index, l)
+        fail("Expected an exception for " + l)
+      } catch {
+        case e: IllegalArgumentException =>
+      }
+    }
+  }
+
+  def testArchiveAndRecursive() {
+    val zip = new File(dir, "corpus.zip")
+    val out = new java.util.zip.ZipOutputStream(new java.io.FileOutputStream(zip))
+    try {
+      CorpusDocument.documents(dir, true).toList.foreach{d =>
+        out.putNextEntry(new java.util.zip.ZipEntry("www.ainm.ie/" + d.name))
+        out.write(Files.readAllBytes(d.asInstanceOf[FileDocument].file.toPath))
+        out.closeEntry()
+      }
+    } finally {
+      out.close()
+    }
+    val fromDir = new File(dir, "dir.bin")
+    val fromZip = new File(dir, "zip.bin")
+    BiographyIndex.build(CorpusDocument.documents(dir, true), fromDir, 1)
+    BiographyIndex.build(CorpusDocument.documents(zip), fromZip, 1)
+    assertTrue(java.util.Arrays.equals(Files.readAllBytes(fromDir.toPath), Files.readAllBytes(fromZip.toPath)))
+    assertEquals(4, build(CorpusDocument.documents(dir), "flat.bin").size)
+  }
+
+  def testSample() {
+    Files.write(new File(dir, "Bio.aspx?ID=0&xml=true").toPath, bytes)
+    val index = build(CorpusDocument.documents(dir), "sample.bin")
+    val row = (0 until index.size).find{r => index.text("id", r) == "0"}.get
+    assertEquals(1798, index.year("birthyear", row))
+    assertEquals(List("file"), index.list("occupations", row))
+    assertEquals("foreign", index.text("birthplaceforeign", row))
+  }
+}
+// set tabstop=2
@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.atomic.AtomicInteger
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+class ConversionCacheTest extends TestCase {
+  import TestFixtures._
+
+  var dir: File = null
+  var cacheDir: File = null
+  val conversions = new AtomicInteger
+
+  override def setUp() {
+    dir = Files.createTempDirectory("conversioncachetest").toFile
+    cacheDir = new File(dir, "cache")
+    conversions.set(0)
+  }
+
+  override def tearDown() {
+    def delete(f: File) {
+      if(f.isDirectory) f.listFiles.foreach{delete}
+      f.delete()
+    }
+    delete(dir)
+  }
+
+  private def document(name: String): CorpusDocument = {
+    val f = new File(dir, name)
+    Files.write(f.toPath, bytes)
+    new FileDocument(f)
+  }
+
+  private def convert(d: CorpusDocument): List[String] = {
+    conversions.incrementAndGet()
+    AinmProcess.processFileMulti[CorpusDocument](d, filters, {e => AinmProcess.readDocument(e, false)})
+  }
+
+  private def assertSameBytes(expected: List[String], actual: List[String]) {
+    assertEquals(expected.length, actual.length)
+    expected.zip(actual).foreach{case (a, b) => assertTrue(java.util.Arrays.equals(a.getBytes("UTF-8"), b.getBytes("UTF-8")))}
+  }
+
+  def testHitIsSameAsMiss() {
+    val mode = ConversionCache.mode(false, false)
+    val doc = document("sample.xml")
+    val cache = new ConversionCache(cacheDir, filters, mode)
+    val miss = cache.get(doc)(convert)
+    cache.close(Set(doc.path))
+    assertEquals(1, conversions.get)
+
+    val again = new ConversionCache(cacheDir, filters, mode)
+    val hit = again.get(doc)(convert)
+    again.close(Set(doc.path))
+    assertEquals(1, conversions.get)
+    assertEquals("Cache: 1 unchanged, 0 converted", again.summary)
+    assertSameBytes(miss, hit)
+    assertSameBytes(convert(doc), hit)
+  }
+
+  def testModeIsPartOfKey() {
+    val doc = document("sample.xml")
+    val dom = new ConversionCache(cacheDir, filters, ConversionCache.mode(false, false))
+    dom.get(doc)(convert)
+    dom.close(Set(doc.path))
+    val projected = new ConversionCache(cacheDir, filters, ConversionCache.mode(false, true))
+    val out = projected.get(doc){d =>
+      conversions.incrementAndGet()
+      OffsetProjection.processFileMulti[CorpusDocument](d, filters, {e => AinmProcess.readDocument(e, false)})
+    }
+    projected.close(Set(doc.path))
+    assertEquals(2, conversions.get)
+    assertEquals("Cache: 0 unchanged, 1 converted", projected.summary)
+    val hit = new ConversionCache(cacheDir, filters, ConversionCache.mode(false, true)).get(doc)(convert)
+    assertSameBytes(out, hit)
+    assertEquals(2, conversions.get)
+  }
+
+  def testSameContentConvertedConcurrently() {
+    val docs = (0 until 16).map{i => document("copy" + i + ".xml")}
+    val cache = new ConversionCache(cacheDir, filters, ConversionCache.mode(false, false))
+    val out = AinmProcess.orderedMap(docs.iterator, 8){d => cache.get(d)(convert)}.toList
+    cache.close(docs.map{_.path}.toSet)
+    out.foreach{o => assertSameBytes(out.head, o)}
+    val names = cacheDir.list.toList
+    assertFalse(names.exists{_.endsWith(".tmp")})
+    assertEquals(filters.length, names.count{_.endsWith(".txt")})
+  }
+
+  def testSelectionKeepsOtherEntries() {
+    val docs = (0 until 3).map{i =>
+      val d = new File(dir, "Bio.aspx?ID=" + i + "&xml=true")
+      Files.write(d.toPath, TestFixtures.document(i, List("Rugadh <persName id=\"" + i + "\">Seán " + i + "</persName> i gCorcaigh.")).getBytes("UTF-8"))
+      new FileDocument(d)
+    }
+    val mode = ConversionCache.mode(false, false)
+    val warm = new ConversionCache(cacheDir, filters, mode)
+    docs.foreach{d => warm.get(d)(convert)}
+    warm.close(docs.map{_.path}.toSet)
+    assertEquals(3, conversions.get)
+
+    // a run with only the second document selected
+    val seen = scala.collection.mutable.Set.empty[String]
+    val selected = AinmProcess.selectDocuments(docs.iterator, {n => AinmProcess.documentId(n) == "1"}, seen).toList
+    assertEquals(List(docs(1)), selected)
+    val cache = new ConversionCache(cacheDir, filters, mode)
+    selected.foreach{d => cache.get(d)(convert)}
+    cache.close(seen.toSet)
+    assertEquals("Cache: 1 unchanged, 0 converted", cache.summary)
+
+    val again = new ConversionCache(cacheDir, filters, mode)
+    docs.foreach{d => assertSameBytes(convert(d), again.get(d){e => fail("Converted again: " + e.name); Nil})}
+    again.close(docs.map{_.path}.toSet)
+    assertEquals("Cache: 3 unchanged, 0 converted", again.summary)
+  }
+}
+// set tabstop=2
@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.util.concurrent.ExecutionException
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+class ConversionServiceTest extends TestCase {
+  import TestFixtures._
+
+  val small = document(1, List("Rugadh <persName id=\"1\">Seán Ó Riada</persName> i <placeName id=\"p1\">gCorcaigh</placeName>.", "",
+    "Bhí sé ina bhall de <conradh type=\"branch\">Chonradh na Gaeilge</conradh>."))
+  val malformed = "<biography><text><p>Níl deireadh leis seo"
+
+  /** A batch of requests, with every format, filter and reader */
+  val requests: List[(Array[Byte], String, String)] = for {
+    format <- CorpusSink.formats
+    filter <- filters
+    tei <- List(bytes, small.getBytes("UTF-8"))
+  } yield (tei, filter, format)
+
+  def testBatchSameAsConvert() {
+    List(false, true).foreach{stax =>
+      val batch = ConversionService.convertBatch(requests, stax)
+      assertEquals(requests.length, batch.length)
+      requests.zip(batch).foreach{case ((tei, filter, format), out) =>
+        assertEquals(new String(ConversionService.convert(tei, filter, format, stax), "UTF-8"), new String(out.right.get, "UTF-8"))
+      }
+    }
+  }
+
+  def testFailureOnlyFailsItsDocument() {
+    val withBad = requests.take(3) ++ List((malformed.getBytes("UTF-8"), "", "opennlp")) ++ requests.drop(3).take(3)
+    val batch = ConversionService.convertBatch(withBad, false)
+    assertTrue(batch(3).isLeft)
+    withBad.zip(batch).zipWithIndex.filter{_._2 != 3}.foreach{case (((tei, filter, format), out), _) =>
+      assertEquals(new String(ConversionService.convert(tei, filter, format, false), "UTF-8"), new String(out.right.get, "UTF-8"))
+    }
+  }
+
+  def testService() {
+    val service = new ConversionService(2, 8, 4, false)
+    try {
+      val results = requests.map{case (tei, filter, format) => service.submitAndWait(tei, filter, format)}
+      val bad = service.submitAndWait(malformed.getBytes("UTF-8"), "", "opennlp")
+      requests.zip(results).foreach{case ((tei, filter, format), r) =>
+        assertEquals(new String(ConversionService.convert(tei, filter, format, false), "UTF-8"), new String(r.get, "UTF-8"))
+      }
+      try {
+        bad.get
+        fail("Expected an exception")
+      } catch {
+        case e: ExecutionException =>
+      }
+      assertTrue(service.status.contains("completed " + requests.length + ", failed 1"))
+    } finally {
+      service.shutdown()
+    }
+  }
+}
+// set tabstop=2
@@ -0,0 +1,98 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.File
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+/**
+ * The tar fixtures hold the same entries, written by Python's tarfile in
+ * each format: a directory, three biographies (one with a path of more
+ * than 100 bytes, and one a contiguous file, type '7') and a file that
+ * is not a biography; the GNU and pax archives have a fourth biography,
+ * with a path too long for a ustar header (non-ASCII, in the pax one).
+ */
+class CorpusDocumentTest extends TestCase {
+  val longDir = "ainm/" + "a" * 60 + "/" + "b" * 40
+  val expected = List(
+    ("ainm/Bio.aspx?ID=1&xml=true", "Rugadh Seán i nGaillimh."),
+    (longDir + "/Bio.aspx?ID=2&xml=true", "Rugadh Máire i gCorcaigh."),
+    ("ainm/Bio.aspx?ID=3&xml=true", "Rugadh Peadar i mBéal Feirste.")
+  )
+
+  private def resource(name: String): File = {
+    val url = getClass.getResource(name)
+    if(url == null) {
+      throw new Exception("Missing test resource: " + name)
+    }
+    new File(url.toURI)
+  }
+
+  private def read(d: CorpusDocument): String = {
+    val in = d.open()
+    try {
+      TEIStreamReader.readParagraphs(in).map{_.getText}.mkString("\n")
+    } finally {
+      in.close()
+    }
+  }
+
+  private def check(archive: String, entries: List[(String, String)]) {
+    val f = resource(archive)
+    val docs = CorpusDocument.documents(f, false).toList
+    assertEquals(entries.map{_._1}, docs.map{_.path.substring(f.getAbsolutePath.length + 2)})
+    assertEquals(entries.map{e => e._1.substring(e._1.lastIndexOf('/') + 1)}, docs.map{_.name})
+    assertEquals(entries.map{_._2}, docs.map{read})
+    docs.foreach{d =>
+      val in = d.open()
+      val length = try Stream.continually(in.read()).takeWhile{_ != -1}.length finally in.close()
+      assertEquals(length.toLong, d.size)
+      assertEquals(1500000000000L, d.modified)
+    }
+  }
+
+  def testLongPaths() {
+    assertTrue(expected(1)._1.getBytes("UTF-8").length > 100)
+  }
+
+  def testUstar() {
+    check("sample-ustar.tar", expected)
+  }
+
+  def testGNU() {
+    check("sample-gnu.tar.gz", expected :+ ("ainm/" + "c" * 120 + "/Bio.aspx?ID=4&xml=true", "Rugadh Nóra i gCiarraí."))
+  }
+
+  def testPax() {
+    check("sample-pax.tar", expected :+ ("ainm/" + "Éire/" * 25 + "Bio.aspx?ID=4&xml=true", "Rugadh Nóra i gCiarraí."))
+  }
+
+  def testIsArchive() {
+    List("sample-ustar.tar", "sample-gnu.tar.gz", "sample-pax.tar").foreach{a => assertTrue(a, CorpusDocument.isArchive(resource(a)))}
+    assertFalse(CorpusDocument.isArchive(resource(TestFixtures.sampleName)))
+  }
+}
+// set tabstop=2
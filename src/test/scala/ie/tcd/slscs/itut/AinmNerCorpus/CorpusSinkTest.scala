@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.ByteArrayOutputStream
+
+import opennlp.tools.util.Span
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+class CorpusSinkTest extends TestCase {
+  import TestFixtures._
+
+  /** A sentence of the tokens, separated by spaces, with the names given */
+  private def sentence(tokens: String*)(names: Span*): ProjectedSentence = {
+    val text = tokens.mkString(" ")
+    val spans = tokens.scanLeft(0){(o, t) => o + t.length + 1}.zip(tokens).map{case (o, t) => new Span(o, o + t.length)}
+    ProjectedSentence(text, new Span(0, text.length), spans.toArray, names.toArray)
+  }
+
+  private def opennlp(sents: List[ProjectedSentence], filter: String): String = {
+    val out = new ByteArrayOutputStream
+    val sink = CorpusSink("opennlp", filter, out)
+    sink.startDocument("0")
+    sents.foreach{sink.sentence}
+    sink.endDocument()
+    sink.close()
+    new String(out.toByteArray, "UTF-8")
+  }
+
+  private def nameSamples(sents: List[ProjectedSentence], filter: String): String =
+    sents.map{_.toNameSample(filter).toString.trim}.mkString("\n")
+
+  val edgeCases = List(
+    // one token, in a name, where NameSample.toString has two spaces
+    sentence("Seán")(new Span(0, 1, "person")),
+    sentence("Seán")(),
+    sentence("Seán", "Ó", "Riada")(new Span(0, 3, "person")),
+    sentence("Seán", "a", "rugadh")(new Span(0, 1, "person")),
+    sentence("i", "mBaile", "Átha", "Cliath")(new Span(1, 4, "location")),
+    sentence("ó", "Chorcaigh", ".")(new Span(1, 2, "location")),
+    sentence("Seán", "Conradh", "na", "Gaeilge")(new Span(0, 1, "person"), new Span(1, 4, "organization")),
+    sentence("agus", "Seán", "Dáil", "Éireann", "Corcaigh", ".")(new Span(1, 2, "person"), new Span(2, 4, "organization"), new Span(4, 5, "location")),
+    sentence("Seán", "Máire")(new Span(0, 1, "person"), new Span(1, 2, "person")),
+    sentence()()
+  )
+
+  def testOpenNLPEdgeCases() {
+    List("", "person", "organization", "location").foreach{f =>
+      edgeCases.foreach{s =>
+        assertEquals(nameSamples(List(s), f), opennlp(List(s), f))
+      }
+      assertEquals(nameSamples(edgeCases, f), opennlp(edgeCases, f))
+    }
+    assertEquals("<START:person> Seán  <END>", opennlp(edgeCases.take(1), ""))
+  }
+
+  def testOpenNLPSample() {
+    val sents = OffsetProjection.projectParagraphs(paragraphs)
+    filters.foreach{f =>
+      assertEquals(nameSamples(sents, f), opennlp(sents, f))
+    }
+  }
+}
+// set tabstop=2
@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+/**
+ * Each thread of CorpusStats.gather keeps its own statistics, which are
+ * merged at the end, so a merge has to give the same result as one pass.
+ */
+class CorpusStatsTest extends TestCase {
+  // deterministic, uneven data
+  val data: IndexedSeq[Double] = (0 until 1000).map{i => ((i * 7919) % 1009) / 10.0 + (if(i % 97 == 0) 500.0 else 0.0)}
+
+  private def moments(xs: Seq[Double]): Moments = {
+    val m = new Moments
+    xs.foreach{m.add}
+    m
+  }
+
+  def testMomentsMerge() {
+    val whole = moments(data)
+    val mean = data.sum / data.length
+    val variance = data.map{x => (x - mean) * (x - mean)}.sum / (data.length - 1)
+    assertEquals(mean, whole.mean, 1e-9)
+    assertEquals(math.sqrt(variance), whole.stddev, 1e-9)
+    // split at several points, including into an empty part
+    List(0, 1, 333, 999, 1000).foreach{at =>
+      val (a, b) = data.splitAt(at)
+      val merged = moments(a)
+      merged.merge(moments(b))
+      assertEquals(whole.n, merged.n)
+      assertEquals(whole.mean, merged.mean, 1e-9)
+      assertEquals(whole.m2, merged.m2, 1e-6)
+      assertEquals(whole.stddev, merged.stddev, 1e-9)
+    }
+    // and from many parts, as with many threads
+    val parts = data.grouped(37).map{moments}.toList
+    val merged = new Moments
+    parts.foreach{merged.merge}
+    assertEquals(whole.n, merged.n)
+    assertEquals(whole.mean, merged.mean, 1e-9)
+    assertEquals(whole.stddev, merged.stddev, 1e-9)
+  }
+
+  private def sketch(items: Seq[String], p: Int = 14): HyperLogLog = {
+    val h = new HyperLogLog(p)
+    items.foreach{h.add}
+    h
+  }
+
+  private def assertWithin(expected: Long, actual: Long, error: Double) {
+    assertTrue(actual + " not within " + error + " of " + expected, math.abs(actual - expected) <= expected * error)
+  }
+
+  def testHyperLogLogError() {
+    // the standard error is 0.8% for p = 14 and 3.25% for p = 10; three
+    // times that is allowed (the hashes are fixed, so this cannot flake)
+    List(100, 1000, 20000, 200000).foreach{n =>
+      val items = (0 until n).map{"entity " + _}
+      assertWithin(n, sketch(items).estimate, 0.024)
+      assertWithin(n, sketch(items, 10).estimate, 0.0975)
+      // repeats are not counted again
+      assertEquals(sketch(items).estimate, sketch(items ++ items.take(n / 2)).estimate)
+    }
+    assertEquals(0L, new HyperLogLog().estimate)
+  }
+
+  def testHyperLogLogMerge() {
+    val a = (0 until 30000).map{"a " + _}
+    // overlapping with a
+    val b = (15000 until 50000).map{"a " + _}
+    val merged = sketch(a)
+    merged.merge(sketch(b))
+    val union = sketch(a ++ b)
+    assertEquals(union.estimate, merged.estimate)
+    assertWithin(50000, merged.estimate, 0.024)
+    // the order of the merge does not matter
+    val other = sketch(b)
+    other.merge(sketch(a))
+    assertEquals(union.estimate, other.estimate)
+  }
+
+  private def topK(k: Int, items: Seq[(Double, String)]): TopK = {
+    val t = new TopK(k)
+    items.foreach{case (v, id) => t.add(v, id)}
+    t
+  }
+
+  def testTopKMerge() {
+    val items = data.zipWithIndex.map{case (v, i) => (v + i / 1e6, i.toString)}
+    val expected = items.sortBy{-_._1}.take(5).toList
+    assertEquals(expected, topK(5, items).items)
+    // the top entries are all in one part, or spread over the parts
+    List(items.splitAt(500), items.sortBy{_._1}.splitAt(500), items.partition{_._2.toInt % 2 == 0}).foreach{case (a, b) =>
+      val merged = topK(5, a)
+      merged.merge(topK(5, b))
+      assertEquals(expected, merged.items)
+    }
+    // fewer than k
+    val few = topK(5, items.take(2))
+    few.merge(topK(5, items.slice(2, 3)))
+    assertEquals(items.take(3).sortBy{-_._1}.toList, few.items)
+  }
+
+  def testHistogramMerge() {
+    val a = new Histogram(10)
+    val b = new Histogram(10)
+    val whole = new Histogram(10)
+    (0 until 100).foreach{i =>
+      (if(i % 3 == 0) a else b).add(i % 14)
+      whole.add(i % 14)
+    }
+    a.merge(b)
+    assertEquals(whole.counts.toList, a.counts.toList)
+    assertEquals(100L, a.total)
+  }
+}
+// set tabstop=2
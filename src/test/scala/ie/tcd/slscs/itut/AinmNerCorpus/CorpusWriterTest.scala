@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.{StringWriter, Writer}
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+class CorpusWriterTest extends TestCase {
+  val pieces = List("", "\n", "\n\n", "a", "a\n", "\na", "\n\na\n\n", "a\n\n\nb", "bc", "\n\n\n")
+
+  /** Checks the range of each string written to it */
+  class CheckingWriter extends StringWriter {
+    override def write(str: String, off: Int, len: Int) {
+      if(off < 0 || len < 0 || off + len > str.length) {
+        throw new IndexOutOfBoundsException("" + off + ", " + len)
+      }
+      super.write(str, off, len)
+    }
+  }
+
+  private def collapse(l: List[String], write: (Writer, String) => Unit): String = {
+    val out = new CheckingWriter
+    val w = new NewlineCollapsingWriter(out)
+    l.foreach{s => write(w, s)}
+    w.close()
+    out.toString
+  }
+
+  /** Every sequence of up to three pieces, so that runs cross writes */
+  val sequences: List[List[String]] = (0 to 3).toList.flatMap{n =>
+    (1 to n).foldLeft(List(List.empty[String])){(acc, _) => for(l <- acc; p <- pieces) yield p :: l}
+  }
+
+  def testSameAsReplaceAll() {
+    sequences.foreach{l =>
+      val expected = l.mkString.replaceAll("\n+", "\n")
+      assertEquals(l.toString, expected, collapse(l, {(w, s) => w.write(s)}))
+      assertEquals(l.toString, expected, collapse(l, {(w, s) => w.write(s.toCharArray, 0, s.length)}))
+      assertEquals(l.toString, expected, collapse(l, {(w, s) => s.foreach{c => w.write(c.toInt)}}))
+    }
+  }
+
+  def testOffsets() {
+    val s = "x\n\nab\n\n\ncd\ny"
+    for(off <- 0 to s.length; len <- 0 to s.length - off) {
+      val expected = s.substring(off, off + len).replaceAll("\n+", "\n")
+      assertEquals(expected, collapse(List(s), {(w, str) => w.write(str, off, len)}))
+      assertEquals(expected, collapse(List(s), {(w, str) => w.write(str.toCharArray, off, len)}))
+    }
+  }
+
+  def testCorpusWriter() {
+    val out = new StringWriter
+    val w = new CorpusWriter(out)
+    val docs = List("\na\n\nb\n", "", "\n\nc", "d\n\n")
+    docs.foreach{w.writeDocument}
+    w.close()
+    assertEquals(docs.mkString("\n").replaceAll("\n+", "\n"), out.toString)
+  }
+}
+// set tabstop=2
@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.StringWriter
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+class DeduplicatorTest extends TestCase {
+  import TestFixtures._
+
+  /** The sample, converted: one document, a sentence per line */
+  lazy val converted: String = AinmProcess.processParagraphs(paragraphs, "").mkString("\n")
+  lazy val sentences: List[String] = converted.split("\n").toList.filter{_ != ""}
+  lazy val long: List[String] = sentences.filter{_.split(" ").length >= 20}
+
+  private def write(d: Deduplicator, docs: List[String]): String = {
+    val out = new StringWriter
+    val w = new CorpusWriter(out, Some(d))
+    docs.foreach{w.writeDocument}
+    w.close()
+    out.toString
+  }
+
+  /** The sentence with its last token replaced */
+  private def nearCopy(s: String): String = s.substring(0, s.lastIndexOf(' ')) + " Ó Riada"
+
+  def testExactDuplicatesDropped() {
+    val d = new Deduplicator(false)
+    val once = write(new Deduplicator(false), List(converted))
+    assertEquals(once, write(d, List(converted, converted)))
+    assertEquals(2L * sentences.length - sentences.distinct.length, d.exact)
+    assertEquals(2L * sentences.length, d.sentences)
+    assertEquals(0L, d.overflow)
+  }
+
+  def testNearDuplicatesDropped() {
+    assertFalse(long.isEmpty)
+    val copies = long.map{nearCopy}
+    val exactOnly = new Deduplicator(false)
+    val d = new Deduplicator(true)
+    assertEquals(copies.mkString("\n"), exactOnly.filter(copies.mkString("\n")))
+    val first = d.filter(converted)
+    assertEquals(new Deduplicator(false).filter(converted), first)
+    assertEquals("", d.filter(copies.mkString("\n")))
+    assertEquals(copies.length.toLong, d.nearDuplicates)
+    // a different sentence is still kept
+    assertEquals("Níl sé seo sa bheathaisnéis ar chor ar bith .", d.filter("Níl sé seo sa bheathaisnéis ar chor ar bith ."))
+  }
+
+  def testEmptyLinesKept() {
+    val d = new Deduplicator(true)
+    assertEquals("a b c\n\n\nd e f\n", d.filter("a b c\n\na b c\n\nd e f\n"))
+  }
+
+  def testLimit() {
+    val d = new Deduplicator(false, maxHashes = 2)
+    assertEquals("a\nb\nc\nc", d.filter("a\nb\na\nc\nb\nc"))
+    assertEquals(2L, d.exact)
+    assertEquals(2L, d.overflow)
+    assertTrue(d.summary.contains("2 hashes not kept"))
+  }
+
+  def testLongSetLimit() {
+    val s = new LongSet(16, 100)
+    (1L to 100L).foreach{i => assertTrue(s.add(i * 7919))}
+    assertTrue(s.isFull)
+    assertFalse(s.add(7919))
+    assertTrue(s.add(0L))
+    assertTrue(s.add(0L))
+    assertFalse(s.contains(0L))
+    assertEquals(100, s.size)
+    assertEquals(2L, s.overflow)
+    (1L to 100L).foreach{i => assertTrue(s.contains(i * 7919))}
+  }
+}
+// set tabstop=2
@@ -0,0 +1,145 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.ByteArrayInputStream
+import javax.xml.stream.{XMLEventReader, XMLStreamException}
+import javax.xml.stream.events.XMLEvent
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+object EmbeddedElementRepairTest {
+  val doc = "<p>\n  <persName id=\"1\">Seán<hide> (1900)</hide> Ó <placeName id=\"2\">Briain</placeName></persName>\n" +
+    "  <!-- nóta --><persName id=\"3\">Máire</persName>\n</p>"
+
+  def reader(s: String): XMLEventReader = TEIStreamReader.createReader(new ByteArrayInputStream(s.getBytes("UTF-8")))
+
+  def describe(e: XMLEvent): String = {
+    if(e.isStartElement) {
+      "<" + e.asStartElement.getName.getLocalPart + ">"
+    } else if(e.isEndElement) {
+      "</" + e.asEndElement.getName.getLocalPart + ">"
+    } else if(e.isCharacters) {
+      e.asCharacters.getData
+    } else {
+      "#" + e.getEventType
+    }
+  }
+
+  // the events of the repaired document, without the start and end of the document
+  val repaired = List("<p>", "\n  ", "<persName>", "Seán Ó Briain", "</persName>", "<hide>", " (1900)", "</hide>",
+    "\n  ", "#5", "<persName>", "Máire", "</persName>", "\n", "</p>")
+}
+
+class EmbeddedElementRepairTest extends TestCase {
+  import EmbeddedElementRepairTest._
+
+  private def body(l: List[String]): List[String] = l.filter{e => e != "#7" && e != "#8"}
+
+  def testNextEvent() {
+    val r = reader(doc)
+    val out = List.newBuilder[String]
+    while(r.hasNext) {
+      out += describe(r.nextEvent())
+    }
+    assertEquals(repaired, body(out.result()))
+  }
+
+  def testNext() {
+    val r = reader(doc)
+    val out = List.newBuilder[String]
+    while(r.hasNext) {
+      out += describe(r.next().asInstanceOf[XMLEvent])
+    }
+    assertEquals(repaired, body(out.result()))
+  }
+
+  def testPeek() {
+    val r = reader(doc)
+    val out = List.newBuilder[String]
+    while(r.peek() != null) {
+      val peeked = r.peek()
+      val e = r.nextEvent()
+      assertSame(peeked, e)
+      out += describe(e)
+    }
+    assertFalse(r.hasNext)
+    assertEquals(repaired, body(out.result()))
+  }
+
+  def testNextTagAndGetElementText() {
+    val r = reader(doc)
+    assertTrue(r.nextEvent().isStartDocument)
+    assertEquals("<p>", describe(r.nextTag()))
+    assertEquals("<persName>", describe(r.nextTag()))
+    // the parent reader would fail here, on the embedded elements
+    assertEquals("Seán Ó Briain", r.getElementText())
+    assertEquals("<hide>", describe(r.nextTag()))
+    assertEquals(" (1900)", r.getElementText())
+    // skips the whitespace and the comment
+    assertEquals("<persName>", describe(r.nextTag()))
+    assertEquals("Máire", r.getElementText())
+    assertEquals("</p>", describe(r.nextTag()))
+  }
+
+  def testErrors() {
+    val r = reader(doc)
+    r.nextEvent()
+    try {
+      r.getElementText()
+      fail("getElementText at the start of the document")
+    } catch {
+      case e: XMLStreamException =>
+    }
+    r.nextTag()
+    try {
+      r.getElementText()
+      fail("getElementText of an element with children")
+    } catch {
+      case e: XMLStreamException =>
+    }
+    val text = reader("<p>text</p>")
+    try {
+      text.nextTag()
+      fail("nextTag at the start of the document")
+    } catch {
+      case e: XMLStreamException =>
+    }
+    assertEquals("<p>", describe(text.nextTag()))
+    try {
+      text.nextTag()
+      fail("nextTag at text")
+    } catch {
+      case e: XMLStreamException =>
+    }
+    try {
+      text.remove()
+      fail("remove")
+    } catch {
+      case e: UnsupportedOperationException =>
+    }
+  }
+}
+// set tabstop=2
@@ -0,0 +1,134 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.{ByteArrayOutputStream, File}
+import java.nio.ByteBuffer
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+import BinaryIO._
+
+class EntityIndexTest extends TestCase {
+  import TestFixtures._
+
+  var file: File = null
+
+  override def setUp() {
+    file = File.createTempFile("entityindextest", ".bin")
+  }
+
+  override def tearDown() {
+    file.delete()
+  }
+
+  /** Values at the boundaries of each length of varint */
+  val boundaries: List[Long] = 0L :: 1L :: (1 to 9).toList.flatMap{i => List((1L << (7 * i)) - 1, 1L << (7 * i))}.filter{_ > 0} ++
+    List(Int.MaxValue.toLong - 1, Int.MaxValue.toLong, Long.MaxValue - 1, Long.MaxValue)
+
+  def testVarLongRoundTrip() {
+    boundaries.foreach{v =>
+      val out = new ByteArrayOutputStream
+      writeVarLong(out, v)
+      val expected = if(v == 0) 1 else (64 - java.lang.Long.numberOfLeadingZeros(v) + 6) / 7
+      assertEquals("length of " + v, expected, out.size)
+      val in = ByteBuffer.wrap(out.toByteArray)
+      assertEquals(v, readVarLong(in))
+      assertEquals(0, in.remaining)
+    }
+    val out = new ByteArrayOutputStream
+    writeVarInt(out, 127)
+    writeVarInt(out, 128)
+    assertEquals(List(0x7f, 0x80, 0x01), out.toByteArray.toList.map{_ & 0xff})
+    try {
+      writeVarInt(out, -1)
+      fail("Expected an exception")
+    } catch {
+      case e: IllegalArgumentException =>
+    }
+  }
+
+  def testVarIntSequence() {
+    val ints = boundaries.filter{_ <= Int.MaxValue}.map{_.toInt}
+    val out = new ByteArrayOutputStream
+    ints.foreach{v => writeVarInt(out, v)}
+    val in = ByteBuffer.wrap(out.toByteArray)
+    assertEquals(ints, ints.map{_ => readVarInt(in)})
+    assertEquals(0, in.remaining)
+  }
+
+  private def roundTrip(docs: Seq[String], postings: Map[String, Seq[EntityPosting]]): EntityIndex = {
+    EntityIndex.write(docs, postings, file)
+    val index = new EntityIndex(file)
+    assertEquals(docs.length, index.documents)
+    assertEquals(postings.size, index.size)
+    docs.zipWithIndex.foreach{case (d, i) => assertEquals(d, index.document(i))}
+    postings.foreach{case (k, l) =>
+      assertEquals(k, l.length, index.count(k))
+      assertEquals(k, l.toList, index.postings(k).toList)
+    }
+    index
+  }
+
+  /**
+   * Postings whose differences (of document, paragraph, start), lengths
+   * and text numbers are at the varint boundaries
+   */
+  def testDeltaBoundaries() {
+    val big = Int.MaxValue / 2
+    val docs = (0 until 300).map{i => "Bio.aspx?ID=" + i + "&xml=true"}
+    val texts = (0 until 200).map{i => "ainm " + i}
+    val boundary = List(
+      EntityPosting(0, 0, 0, 0, ""),
+      EntityPosting(0, 0, 0, 0, ""),
+      EntityPosting(0, 0, 127, 127, texts(0)),
+      EntityPosting(0, 0, 255, 255 + 128, texts(1)),
+      EntityPosting(0, 127, 0, 127, texts(2)),
+      EntityPosting(0, 255, 128, 128 + 16383, texts(3)),
+      EntityPosting(0, 255, 128 + 16384, 128 + 16384 + 16384, texts(4)),
+      // a new document, with the same paragraph number: the start is not a difference
+      EntityPosting(1, 255, 5, 6, texts(5)),
+      EntityPosting(128, 128, big, big + big, texts(127)),
+      EntityPosting(128, big, 0, Int.MaxValue, texts(128)),
+      EntityPosting(256, 0, Int.MaxValue - 1, Int.MaxValue, texts(199)),
+      EntityPosting(299, Int.MaxValue, 0, 1, texts(0))
+    )
+    val many = texts.zipWithIndex.map{case (t, i) => EntityPosting(i, i * 129, i * 16385, i * 16385 + t.length, t)}
+    val index = roundTrip(docs, Map("person:1" -> boundary, "place:2" -> many, "geonames:3" -> List(EntityPosting(0, 0, 0, 1, "a"))))
+    assertEquals(List(0, 1, 128, 256, 299), index.documentsOf("person:1").toList)
+    assertEquals(0, index.count("person:2"))
+  }
+
+  def testSampleRoundTrip() {
+    val perDoc = EntityIndex.postings(paragraphs)
+    assertFalse(perDoc.isEmpty)
+    val docs = List("a.xml", "b.xml", "c.xml")
+    val postings = (0 until docs.length).flatMap{d => perDoc.map{case (k, p) => (k, p.copy(doc = d))}}.groupBy{_._1}.map{case (k, l) => (k, l.map{_._2})}
+    val index = roundTrip(docs, postings)
+    assertEquals(postings.keys.toList.sorted, index.keys().toList.sorted)
+    assertEquals(postings.keys.filter{_.startsWith("person:")}.toList.sorted, index.keys("person:").toList.sorted)
+  }
+}
+// set tabstop=2
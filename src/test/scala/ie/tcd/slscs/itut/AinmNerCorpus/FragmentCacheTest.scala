@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.util.concurrent.{Callable, Executors, TimeUnit}
+import java.util.concurrent.atomic.AtomicInteger
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+class FragmentCacheTest extends TestCase {
+  import TestFixtures._
+
+  override def tearDown() {
+    AinmProcess.enableFragmentCache(0)
+  }
+
+  private def convert(): List[String] =
+    AinmProcess.processFileMulti[Unit]((), filters, {_ => paragraphs}) ++
+    OffsetProjection.processFileMulti[Unit]((), filters, {_ => paragraphs})
+
+  def testSameOutput() {
+    AinmProcess.enableFragmentCache(0)
+    val expected = convert()
+    // a cache small enough to evict, and one that holds everything; the
+    // second conversion is from the cache
+    List(4, 100000).foreach{n =>
+      AinmProcess.enableFragmentCache(n)
+      assertEquals(expected, convert())
+      assertEquals(expected, convert())
+    }
+    assertTrue(AinmProcess.fragmentCacheSummary.forall{s => !s.contains(" 0 hits")})
+  }
+
+  def testHit() {
+    val computed = new AtomicInteger
+    val cache = new FragmentCache[String]("Test", 16)
+    def get(k: String) = cache.get(k){e => computed.incrementAndGet(); e.toUpperCase}
+    assertEquals("SEÁN", get("Seán"))
+    assertEquals("SEÁN", get("Seán"))
+    assertEquals(1, computed.get)
+    assertEquals(1L, cache.hits.sum)
+    assertEquals(1L, cache.misses.sum)
+    assertEquals(0.5, cache.hitRatio)
+  }
+
+  def testLongKeys() {
+    val computed = new AtomicInteger
+    val cache = new FragmentCache[String]("Test", 16, maxLength = 4)
+    (1 to 3).foreach{_ => cache.get("abcde"){e => computed.incrementAndGet(); e}}
+    assertEquals(3, computed.get)
+    assertEquals(0, cache.size)
+  }
+
+  def testLeastRecentlyUsedIsEvicted() {
+    val computed = new AtomicInteger
+    val cache = new FragmentCache[String]("Test", 3, stripes = 1)
+    def get(k: String) = cache.get(k){e => computed.incrementAndGet(); e}
+    List("a", "b", "c").foreach{get}
+    get("a")
+    get("d")
+    assertEquals(3, cache.size)
+    assertEquals(4, computed.get)
+    // b was the least recently used
+    get("a")
+    get("c")
+    get("d")
+    assertEquals(4, computed.get)
+    get("b")
+    assertEquals(5, computed.get)
+  }
+
+  def testCapacity() {
+    val cache = new FragmentCache[String]("Test", 64, stripes = 4)
+    (0 until 10000).foreach{i => cache.get(i.toString){e => e}}
+    assertTrue(cache.size <= 64)
+    // each stripe is full, as the keys spread over them
+    assertEquals(64, cache.size)
+    assertEquals(10000L, cache.misses.sum)
+    // the first keys are long gone
+    cache.get("0"){e => e}
+    assertEquals(10001L, cache.misses.sum)
+  }
+
+  def testCapacityWithThreads() {
+    val cache = new FragmentCache[String]("Test", 64, stripes = 4)
+    val pool = Executors.newFixedThreadPool(4)
+    try {
+      val futures = (0 until 4).map{t =>
+        pool.submit(new Callable[Unit] {
+          def call() {
+            (0 until 5000).foreach{i =>
+              val k = ((i * 7 + t) % 500).toString
+              assertEquals(k + "!", cache.get(k){_ + "!"})
+            }
+          }
+        })
+      }
+      futures.foreach{_.get(60, TimeUnit.SECONDS)}
+    } finally {
+      pool.shutdown()
+    }
+    assertTrue(cache.size <= 64)
+    assertEquals(20000L, cache.hits.sum + cache.misses.sum)
+  }
+}
+// set tabstop=2
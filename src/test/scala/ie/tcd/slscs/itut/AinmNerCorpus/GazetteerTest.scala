@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.{File, StringWriter}
+import java.nio.file.Files
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+object GazetteerTest {
+  private def isWordChar(c: Char): Boolean = Character.isLetterOrDigit(c)
+
+  /**
+   * The leftmost-longest, non-overlapping matches that start and end at
+   * word boundaries, found by trying every pattern at every position.
+   */
+  def naiveMatches(text: String, entries: Seq[(String, String)]): List[(Int, Int, String, String)] = {
+    def boundary(i: Int): Boolean = i == 0 || i == text.length || !isWordChar(text.charAt(i - 1)) || !isWordChar(text.charAt(i))
+    val out = List.newBuilder[(Int, Int, String, String)]
+    var i = 0
+    while(i < text.length) {
+      val found = if(boundary(i)) {
+        entries.filter{case (p, _) => p.length > 0 && text.startsWith(p, i) && boundary(i + p.length)}
+      } else {
+        Nil
+      }
+      if(found.isEmpty) {
+        i += 1
+      } else {
+        val (p, kind) = found.maxBy{_._1.length}
+        out += ((i, i + p.length, p, kind))
+        i += p.length
+      }
+    }
+    out.result()
+  }
+
+  def matches(g: Gazetteer, text: String): List[(Int, Int, String, String)] = {
+    g.matches(text).toList.map{case (s, e, pat) => (s, e, text.substring(s, e), g.types(g.kinds(pat)))}
+  }
+}
+
+class GazetteerTest extends TestCase {
+  import GazetteerTest._
+
+  def testOverlappingPatterns() {
+    val entries = List(("ab", "person"), ("abab", "location"), ("b", "organization"), ("bab", "person"),
+      ("ba", "location"), ("a b", "person"), ("b a b", "location"), ("abc", "person"))
+    val g = Gazetteer.build(entries)
+    List("abababab ab b bab", "ab ab", "a b a b", "b a b a b", "ab-ab abab ababab", "xab abx ab", "abc ab abcd", "", "b").foreach{t =>
+      assertEquals(t, naiveMatches(t, entries), matches(g, t))
+    }
+    assertEquals(List((0, 4, "abab", "location"), (5, 7, "ab", "person")), matches(g, "abab ab"))
+    // a prefix of a longer match is not used when the longer one fits
+    assertEquals(List((0, 5, "b a b", "location")), matches(g, "b a b"))
+  }
+
+  def testRandomPatterns() {
+    val r = new scala.util.Random(1)
+    val alphabet = "ab -"
+    def random(n: Int): String = (0 until n).map{_ => alphabet.charAt(r.nextInt(alphabet.length))}.mkString
+    val kinds = List("person", "organization", "location")
+    for(round <- 0 until 300) {
+      val entries = (0 until 1 + r.nextInt(12)).map{_ => random(1 + r.nextInt(5))}.distinct.map{p => (p, kinds(r.nextInt(3)))}
+      val g = Gazetteer.build(entries)
+      for(k <- 0 until 10) {
+        val t = random(r.nextInt(60))
+        assertEquals(entries + " " + t, naiveMatches(t, entries), matches(g, t))
+      }
+    }
+  }
+
+  def testTagAndReadBack() {
+    val entries = List(("Seán", "person"), ("Seán Ó Briain", "person"), ("Corcaigh", "location"), ("Ó", "organization"))
+    val f = Files.createTempFile("gazetteertest", ".bin").toFile
+    try {
+      Gazetteer.build(entries).write(f)
+      val g = Gazetteer.read(f)
+      val out = new StringWriter
+      g.tag("Rugadh Seán Ó Briain i gCorcaigh , Corcaigh . Seán Ó", out)
+      assertEquals("Rugadh <START:person> Seán Ó Briain <END> i gCorcaigh , <START:location> Corcaigh <END> . " +
+        "<START:person> Seán <END> <START:organization> Ó <END>", out.toString)
+    } finally {
+      f.delete()
+    }
+  }
+}
+// set tabstop=2
@@ -0,0 +1,124 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.{File, FileOutputStream}
+import java.nio.file.Files
+import java.util.zip.{ZipEntry, ZipOutputStream}
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+import NameFinderTraining.{TrainingDocument, isTest, loadDocuments, split}
+
+class NameFinderTrainerTest extends TestCase {
+  var dir: File = null
+
+  override def setUp() {
+    dir = Files.createTempDirectory("namefindertrainertest").toFile
+  }
+
+  override def tearDown() {
+    def delete(f: File) {
+      if(f.isDirectory) f.listFiles.foreach{delete}
+      f.delete()
+    }
+    delete(dir)
+  }
+
+  private def ids(docs: List[TrainingDocument]): List[String] = docs.map{_.id}
+
+  def testSplitIsStable() {
+    // pinned, so that a change to the hash (which would move documents
+    // between training and test from one run to the next) is noticed
+    assertEquals(List(3, 31, 37, 45, 51, 67, 69, 83, 85), (1 to 100).toList.filter{i => isTest(i.toString, 10, 0L)})
+    assertEquals(List(5, 9, 10, 14, 43, 46, 66, 74, 92), (1 to 100).toList.filter{i => isTest(i.toString, 10, 1L)})
+    assertEquals(1039, (1 to 10000).count{i => isTest(i.toString, 10, 0L)})
+  }
+
+  def testSplitPercent() {
+    val all = (1 to 10000).map{_.toString}
+    assertEquals(0, all.count{isTest(_, 0, 0L)})
+    // a larger share only adds documents to the test set
+    val ten = all.filter{isTest(_, 10, 0L)}.toSet
+    val twenty = all.filter{isTest(_, 20, 0L)}.toSet
+    assertTrue(ten.subsetOf(twenty))
+    assertTrue(twenty.size > 1800 && twenty.size < 2200)
+  }
+
+  def testSplitIsDisjoint() {
+    val docs = (1 to 1000).toList.map{i => TrainingDocument(i.toString, Nil)}
+    val (train, test) = split(docs, 10, 0L)
+    assertTrue(ids(train).toSet.intersect(ids(test).toSet).isEmpty)
+    assertEquals(ids(docs).toSet, (ids(train) ++ ids(test)).toSet)
+    assertEquals(docs.length, train.length + test.length)
+    assertTrue(test.forall{d => isTest(d.id, 10, 0L)})
+    // the order of the documents does not matter
+    val (train2, test2) = split(docs.reverse, 10, 0L)
+    assertEquals(ids(test).toSet, ids(test2).toSet)
+    assertEquals(ids(train).toSet, ids(train2).toSet)
+  }
+
+  private def write(f: File, id: Int) {
+    f.getParentFile.mkdirs()
+    val text = TestFixtures.document(id, List("Rugadh <persName>Seán " + id + "</persName> i <placeName>nGaillimh</placeName>."))
+    Files.write(f.toPath, text.getBytes("UTF-8"))
+  }
+
+  def testLoadDocuments() {
+    val corpus = new File(dir, "corpus")
+    (1 to 30).foreach{i =>
+      val sub = if(i % 3 == 0) new File(corpus, "sub") else corpus
+      write(new File(sub, "Bio.aspx?ID=" + i + "&xml=true"), i)
+    }
+    val flat = loadDocuments(corpus, false, 1)
+    assertEquals(20, flat.length)
+    val one = loadDocuments(corpus, false, 1, true)
+    assertEquals((1 to 30).map{_.toString}.toSet, ids(one).toSet)
+    assertTrue(one.forall{!_.sentences.isEmpty})
+
+    // the same documents, and so the same split, with more threads
+    val four = loadDocuments(corpus, true, 4, true)
+    assertEquals(ids(one), ids(four))
+    assertEquals(one.map{_.sentences.map{_.text}}, four.map{_.sentences.map{_.text}})
+    assertEquals(ids(split(one, 30, 0L)._2), ids(split(four, 30, 0L)._2))
+
+    // and from an archive of them
+    val zip = new File(dir, "corpus.zip")
+    val out = new ZipOutputStream(new FileOutputStream(zip))
+    try {
+      CorpusDocument.documents(corpus, true).foreach{d =>
+        out.putNextEntry(new ZipEntry("www.ainm.ie/" + d.name))
+        out.write(Files.readAllBytes(d.asInstanceOf[FileDocument].file.toPath))
+        out.closeEntry()
+      }
+    } finally {
+      out.close()
+    }
+    val zipped = loadDocuments(zip, false, 2)
+    assertEquals(ids(one), ids(zipped))
+    assertEquals(ids(split(one, 30, 0L)._1), ids(split(zipped, 30, 0L)._1))
+  }
+}
+// set tabstop=2
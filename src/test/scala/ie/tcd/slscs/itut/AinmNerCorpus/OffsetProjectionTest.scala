@@ -0,0 +1,171 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+import opennlp.tools.util.Span
+
+object OffsetProjectionTest {
+  // the implementations before the single-pass versions
+  def oldMergeSentences(sents: Array[Span], entities: Array[Span]): Array[Span] = {
+    val out = Array.newBuilder[Span]
+    var i = 0
+    while(i < sents.length) {
+      var end = sents(i).getEnd
+      var j = i
+      var merged = true
+      while(merged) {
+        merged = false
+        if(j + 1 < sents.length && entities.exists{e => e.getStart < end && e.getEnd > end}) {
+          j += 1
+          end = sents(j).getEnd
+          merged = true
+        }
+      }
+      out += new Span(sents(i).getStart, end)
+      i = j + 1
+    }
+    out.result()
+  }
+  def oldSplitTokens(tokens: Array[Span], boundaries: Array[Int]): Array[Span] = {
+    val out = Array.newBuilder[Span]
+    tokens.foreach{t =>
+      var start = t.getStart
+      boundaries.foreach{b =>
+        if(b > start && b < t.getEnd) {
+          out += new Span(start, b)
+          start = b
+        }
+      }
+      out += new Span(start, t.getEnd)
+    }
+    out.result()
+  }
+  def oldTokenSpans(tokens: Array[Span], entities: Array[Span]): Array[Span] = {
+    entities.flatMap{e =>
+      val first = tokens.indexWhere{_.getStart >= e.getStart}
+      val last = tokens.lastIndexWhere{_.getEnd <= e.getEnd}
+      if(first != -1 && last >= first) Some(new Span(first, last + 1, e.getType)) else None
+    }
+  }
+
+  def oldProject(text: String, sents: Array[Span], tokens: Array[Span], entities: Array[Span]): List[ProjectedSentence] = {
+    var t = 0
+    sents.toList.map{s =>
+      val first = t
+      while(t < tokens.length && tokens(t).getStart < s.getEnd) t += 1
+      val stoks = java.util.Arrays.copyOfRange(tokens, first, t)
+      val inside = entities.filter{e => e.getStart >= s.getStart && e.getEnd <= s.getEnd}
+      ProjectedSentence(text, s, stoks, oldTokenSpans(stoks, inside))
+    }.filter{_.tokenSpans.length > 0}
+  }
+
+  /**
+   * Spans in order, not overlapping, within 0 to length, separated by
+   * gaps of up to maxGap, of lengths from 1 to maxLength.
+   */
+  def randomSpans(r: scala.util.Random, length: Int, maxGap: Int, maxLength: Int, kind: String = null): Array[Span] = {
+    val out = Array.newBuilder[Span]
+    var pos = r.nextInt(maxGap + 1)
+    var end = pos + 1 + r.nextInt(maxLength)
+    while(end <= length) {
+      out += new Span(pos, end, kind)
+      pos = end + r.nextInt(maxGap + 1)
+      end = pos + 1 + r.nextInt(maxLength)
+    }
+    out.result()
+  }
+
+  /** The tokens of the converted text, ignoring line breaks */
+  def tokens(s: String): List[String] = s.split("\\s+").toList.filter{_ != ""}
+}
+
+class OffsetProjectionTest extends TestCase {
+  import OffsetProjection._
+  import OffsetProjectionTest._
+
+  def testAgainstOldImplementations() {
+    val r = new scala.util.Random(1)
+    for(i <- 0 until 2000) {
+      val length = 1 + r.nextInt(300)
+      val sents = randomSpans(r, length, 2, 1 + r.nextInt(60))
+      val tokens = randomSpans(r, length, 1, 1 + r.nextInt(8))
+      val entities = randomSpans(r, length, 1 + r.nextInt(30), 1 + r.nextInt(20), "person")
+      val boundaries = (entities.flatMap{e => Array(e.getStart, e.getEnd)} ++ sents.map{_.getStart}).sorted
+      assertEquals(oldMergeSentences(sents, entities).toList, mergeSentences(sents, entities).toList)
+      val split = splitTokens(tokens, boundaries)
+      assertEquals(oldSplitTokens(tokens, boundaries).toList, split.toList)
+      assertEquals(oldTokenSpans(split, entities).toList, tokenSpans(split, entities).toList)
+    }
+  }
+
+  def testProjectAgainstOld() {
+    val r = new scala.util.Random(2)
+    for(i <- 0 until 1000) {
+      val length = 1 + r.nextInt(500)
+      val text = "x" * length
+      val sents = randomSpans(r, length, 3, 1 + r.nextInt(80))
+      val tokens = randomSpans(r, length, 1, 1 + r.nextInt(6))
+      val entities = randomSpans(r, length, 1 + r.nextInt(30), 1 + r.nextInt(20), "location")
+      def summary(l: List[ProjectedSentence]) = l.map{p => (p.span, p.tokenSpans.toList, p.names.toList)}
+      assertEquals(summary(oldProject(text, sents, tokens, entities)), summary(project(text, sents, tokens, entities)))
+    }
+  }
+
+  def testLongParagraph() {
+    val r = new scala.util.Random(3)
+    val length = 50000
+    val text = "x" * length
+    val sents = randomSpans(r, length, 2, 120)
+    val tokens = randomSpans(r, length, 1, 8)
+    val entities = randomSpans(r, length, 20, 25, "organization")
+    val merged = mergeSentences(sents, entities)
+    assertEquals(oldMergeSentences(sents, entities).toList, merged.toList)
+    val boundaries = (entities.flatMap{e => Array(e.getStart, e.getEnd)} ++ merged.map{_.getStart}).sorted
+    val split = splitTokens(tokens, boundaries)
+    assertEquals(oldSplitTokens(tokens, boundaries).toList, split.toList)
+    assertEquals(oldProject(text, merged, split, entities).map{_.names.toList}, project(text, merged, split, entities).map{_.names.toList})
+  }
+
+  /**
+   * On real paragraphs, the projection gives the same tokens and entities
+   * as retokenising each piece, though the sentences may be split
+   * differently.
+   */
+  def testSameTokensAsRetokenising() {
+    TestFixtures.paragraphs.foreach{p =>
+      val projected = projectParagraph(p)
+      TestFixtures.filters.filter{_ != "text"}.foreach{f =>
+        val expected = tokens(AinmProcess.processParagraph(p, f))
+        assertEquals(expected, tokens(projected.map{_.toNameSample(f).toString}.mkString("\n")))
+      }
+    }
+    val multi = OffsetProjection.processFileMulti[List[Paragraph]](TestFixtures.paragraphs, List("", "person"), {l => l})
+    val split = AinmProcess.processFileMulti[List[Paragraph]](TestFixtures.paragraphs, List("", "person"), {l => l})
+    assertEquals(split.map{tokens}, multi.map{tokens})
+  }
+}
+// set tabstop=2
@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.File
+import java.nio.file.Files
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+import AinmProcess.{EntityReference, ainmTextPieceToNER}
+
+class PipelineMetricsTest extends TestCase {
+  import TestFixtures._
+
+  var dir: File = null
+
+  override def setUp() {
+    dir = Files.createTempDirectory("pipelinemetricstest").toFile
+    PipelineMetrics.reset()
+  }
+
+  override def tearDown() {
+    def delete(f: File) {
+      if(f.isDirectory) f.listFiles.foreach{delete}
+      f.delete()
+    }
+    delete(dir)
+    PipelineMetrics.reset()
+  }
+
+  private def documents(n: Int): List[CorpusDocument] = (1 to n).toList.map{i =>
+    val f = new File(dir, i + ".xml")
+    // the cache is keyed on the content, so the copies differ (after the root)
+    Files.write(f.toPath, bytes ++ ("<!-- " + i + " -->").getBytes("UTF-8"))
+    new FileDocument(f)
+  }
+
+  private def convert(docs: List[CorpusDocument], stax: Boolean, cache: Option[ConversionCache]): List[(CorpusDocument, List[String])] =
+    AinmProcess.convertDocuments(docs.iterator, 2, stax, cache){(e, paras) =>
+      AinmProcess.processFileMulti[CorpusDocument](e, filters, {_ => paras})
+    }.toList
+
+  private def entities(kind: String): Int = paragraphs.map{_.children.count{c =>
+    ainmTextPieceToNER(c) match {
+      case EntityReference(_, k) => k == kind
+      case _ => false
+    }
+  }}.sum
+
+  def testCountTokens() {
+    assertEquals(6, PipelineMetrics.countTokens("<START:person> Seán Ó Riada <END> was\nborn ."))
+    assertEquals(0, PipelineMetrics.countTokens(" \n"))
+    assertEquals(4, PipelineMetrics.countOutputTokens(List("a b", "<START:location> c <END> d")))
+  }
+
+  def testCounters() {
+    val docs = documents(3)
+    val out = convert(docs, true, None)
+    assertEquals(docs.map{_.path}, out.map{_._1.path})
+    assertEquals(3L, PipelineMetrics.convert.calls.sum)
+    assertEquals(3L, PipelineMetrics.stream.calls.sum)
+    assertEquals(0L, PipelineMetrics.parse.calls.sum)
+    assertEquals(0L, PipelineMetrics.cachedFiles.sum)
+    assertEquals(3L * paragraphs.length, PipelineMetrics.paragraphs.sum)
+    assertEquals(docs.map{_.size}.sum, PipelineMetrics.bytesRead.sum)
+    List("person", "organization", "location").foreach{k =>
+      assertEquals(k, 3L * entities(k), PipelineMetrics.entities(k).sum)
+    }
+    // every output counts, not only the first filter's
+    val tokens = out.map{_._2.map{PipelineMetrics.countTokens}.sum}.sum
+    assertTrue(tokens > 3 * PipelineMetrics.countTokens(out.head._2.head))
+    assertEquals(tokens.toLong, PipelineMetrics.tokensWritten.sum)
+  }
+
+  def testXMLStages() {
+    convert(documents(2), false, None)
+    assertEquals(2L, PipelineMetrics.parse.calls.sum)
+    assertEquals(2L, PipelineMetrics.extract.calls.sum)
+    assertEquals(0L, PipelineMetrics.stream.calls.sum)
+  }
+
+  def testCacheHits() {
+    val docs = documents(3)
+    val mode = ConversionCache.mode(false, false)
+    val first = new ConversionCache(new File(dir, "cache"), filters, mode)
+    val converted = convert(docs, false, Some(first))
+    first.close(docs.map{_.path}.toSet)
+    val tokens = PipelineMetrics.tokensWritten.sum
+    assertEquals(0L, PipelineMetrics.cachedFiles.sum)
+
+    PipelineMetrics.reset()
+    val second = new ConversionCache(new File(dir, "cache"), filters, mode)
+    val cached = convert(docs, false, Some(second))
+    second.close(docs.map{_.path}.toSet)
+    assertEquals(converted.map{_._2}, cached.map{_._2})
+    // the hits are counted, and their tokens, but nothing is read
+    assertEquals(3L, PipelineMetrics.cachedFiles.sum)
+    assertEquals(tokens, PipelineMetrics.tokensWritten.sum)
+    assertEquals(0L, PipelineMetrics.convert.calls.sum)
+    assertEquals(0L, PipelineMetrics.paragraphs.sum)
+    assertTrue(PipelineMetrics.toJSON.contains("\"cachedFiles\": 3,"))
+  }
+}
+// set tabstop=2
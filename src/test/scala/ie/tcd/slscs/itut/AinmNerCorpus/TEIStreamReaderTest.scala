@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.ByteArrayInputStream
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+import scala.xml.XML
+
+object TEIStreamReaderTest {
+  def wrap(body: String): String =
+    "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+    "<biography id=\"42\"><header><fileDesc><titleStmt>" +
+    "<title>Ó BRIAIN, Seán (1900–1970)</title><persName><forename>Seán</forename><surname>Ó Briain</surname></persName>" +
+    "<birth date=\"1900-01-02\">2 Eanáir 1900</birth><death><circa>c.</circa> 1970</death>" +
+    "<birthPlace id=\"7\" geonames=\"2964574\">Baile Átha Cliath</birthPlace><occupation>file</occupation>" +
+    "</titleStmt></fileDesc></header><text><body><div>" + body + "</div></body></text></biography>"
+
+  val fixtures = List(
+    // <hide> nested in <persName>, repaired by both readers
+    "<p>Rugadh <persName id=\"12\" baseform=\"Seán Ó Briain\">Seán<hide> (1900)</hide> Ó Briain</persName> anseo.</p>",
+    "<p><persName id=\"13\" baseform=\"Máire\"><placeName id=\"1\">Máire</placeName></persName></p>",
+    // comments do not split text
+    "<p>Roimh <!-- nóta --> an <opus type=\"newspaper\" baseform=\"An Claidheamh Soluis\">gClaidheamh Soluis</opus><!-- eile --></p>",
+    // CDATA is part of the surrounding text
+    "<p>Téacs <![CDATA[a < b & c]]> eile <em>béim</em> <blockquote>sliocht</blockquote></p>",
+    // character and entity references, in text and in attributes
+    "<p>Ó &amp; Mac &#233;ire <party baseform=\"Fianna &amp; Fáil\">Fianna Fáil</party> &lt;x&gt;</p>",
+    // empty paragraphs
+    "<p/><p></p><p><!-- --></p>",
+    "<p><placeName id=\"3\" geonames=\"2960000\" type=\"foreign\">Páras</placeName>, <eduInst baseform=\"Coláiste na Tríonóide\" geonames=\"2961000\">Coláiste na Tríonóide</eduInst>, " +
+      "<conradh type=\"branch\" baseform=\"Conradh na Gaeilge\">Conradh na Gaeilge</conradh>, <a href=\"Bio.aspx?ID=1\">nasc</a><hide>x</hide>.</p>"
+  )
+}
+
+class TEIStreamReaderTest extends TestCase {
+  import TEIStreamReaderTest._
+
+  private def dom(s: String): List[Paragraph] = TEIReader.readParagraphs(XML.loadString(s))
+  private def stax(s: String): List[Paragraph] = TEIStreamReader.readParagraphs(new ByteArrayInputStream(s.getBytes("UTF-8")))
+
+  def testSameParagraphs() {
+    fixtures.foreach{f =>
+      val doc = wrap(f)
+      assertEquals(f, dom(doc), stax(doc))
+    }
+  }
+
+  def testAllFixturesInOneDocument() {
+    val doc = wrap(fixtures.mkString("\n"))
+    assertEquals(dom(doc), stax(doc))
+    assertEquals(9, stax(doc).length)
+  }
+
+  def testRepairedAndEmpty() {
+    val paras = stax(wrap(fixtures(0) + fixtures(5)))
+    assertEquals(List("Rugadh ", "Seán Ó Briain", "", " anseo."), paras(0).children.map{_.getText})
+    assertEquals(List(Nil, Nil, Nil), paras.tail.map{_.children})
+  }
+
+  def testTextAcrossCommentsAndCDATA() {
+    val paras = stax(wrap(fixtures(2) + fixtures(3) + fixtures(4)))
+    assertEquals(RawText("Roimh  an "), paras(0).children.head)
+    assertEquals(RawText("Téacs a < b & c eile "), paras(1).children.head)
+    assertEquals(RawText("Ó & Mac éire "), paras(2).children.head)
+  }
+
+  def testAttributeValues() {
+    val doc = wrap(fixtures(2) + fixtures(4) + fixtures(6))
+    List(dom(doc), stax(doc)).foreach{paras =>
+      assertEquals(Opus("newspaper", "An Claidheamh Soluis", "gClaidheamh Soluis"), paras(0).children(1))
+      assertEquals(Party("Fianna & Fáil", "Fianna Fáil"), paras(1).children(1))
+      assertEquals(PlaceName("3", "", "Páras", "2960000", true), paras(2).children(0))
+      assertEquals(Anchor("nasc", "Bio.aspx?ID=1"), paras(2).children(6))
+    }
+  }
+
+  def testSameHeader() {
+    val doc = wrap(fixtures(0))
+    val header = TEIStreamReader.readHeader(new ByteArrayInputStream(doc.getBytes("UTF-8")))
+    assertEquals(TEIReader.readHeader(XML.loadString(doc)), header)
+    assertEquals("42", header.id)
+    assertEquals("2964574", header.birthplace.geonames)
+  }
+}
+// set tabstop=2
@@ -0,0 +1,69 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Jim O'Regan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package ie.tcd.slscs.itut.AinmNerCorpus
+
+import java.io.InputStream
+
+/**
+ * A biography for the tests (sample-bio.xml): the first document of the
+ * corpus, with a paragraph of edge cases added (entities at the start and
+ * end of a paragraph, adjacent entities, hide, newspaper, periodical,
+ * conradh and eduInst), and an empty paragraph.
+ */
+object TestFixtures {
+  val sampleName = "sample-bio.xml"
+  val filters = List("", "person", "organization", "location", "text")
+
+  def open(): InputStream = {
+    val in = getClass.getResourceAsStream(sampleName)
+    if(in == null) {
+      throw new Exception("Missing test resource: " + sampleName)
+    }
+    in
+  }
+
+  def bytes: Array[Byte] = {
+    val in = open()
+    try {
+      Stream.continually(in.read()).takeWhile{_ != -1}.map{_.toByte}.toArray
+    } finally {
+      in.close()
+    }
+  }
+
+  lazy val paragraphs: List[Paragraph] = {
+    val in = open()
+    try {
+      TEIStreamReader.readParagraphs(in)
+    } finally {
+      in.close()
+    }
+  }
+
+  /** A document in the sample's format, from a number of paragraph bodies */
+  def document(id: Int, paras: List[String]): String =
+    "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<biography id=\"" + id + "\"><text>" +
+    paras.map{p => "<p>" + p + "</p>"}.mkString("\n") + "</text></biography>"
+}
+// set tabstop=2